@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.MatrixCursor;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Checks that ForecastAdapter tells the RecyclerView only about the rows that changed between
+    two cursors, and times laying out a long list after a swap that changes one row, the way
+    it's done now against rebinding every row the way swapCursor used to.  Also times the frames
+    of scrolling through a long list, which binds rows without touching the cursor.  The frame
+    times are written to the log under this class's tag.
+ */
+public class TestForecastAdapter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastAdapter.class.getSimpleName();
+
+    static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    static final int LONG_LIST_DAYS = 1000;
+    static final int FRAMES = 50;
+
+    // How far scrolling goes, and how far it moves each frame: a quick fling
+    static final int SCROLL_DAYS = 365;
+    static final int SCROLL_STEP = 240;
+
+    // A frame that takes longer than this misses the next vsync at 60 fps
+    static final long FRAME_BUDGET_NANOS = 16666667;
+
+    // A phone screen, in pixels
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+
+    // The columns are in the order of ForecastFragment's COL_ constants
+    static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    static class CountingAdapter extends ForecastAdapter {
+        int mBindCount;
+
+        CountingAdapter(Context context, int choiceMode) {
+            super(context, new ForecastAdapterOnClickHandler() {
+                @Override
+                public void onClick(Long date, ForecastAdapterViewHolder vh) {
+                }
+            }, new View(context), choiceMode);
+        }
+
+        @Override
+        public void onBindViewHolder(ForecastAdapterViewHolder vh, int position) {
+            mBindCount++;
+            super.onBindViewHolder(vh, position);
+        }
+    }
+
+    /*
+        Counts the times the adapter moves the cursor.
+     */
+    static class CountingCursor extends CursorWrapper {
+        int mMoveCount;
+
+        CountingCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            mMoveCount++;
+            return super.moveToPosition(position);
+        }
+    }
+
+    private String mArtPack;
+    private CountingAdapter mAdapter;
+    private RecyclerView mRecyclerView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Glide can only load into views on the main thread, so use the icons in the app
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_art_pack_key);
+        mArtPack = prefs.getString(key, null);
+        prefs.edit().putString(key, mContext.getString(R.string.pref_art_pack_sunshine)).commit();
+
+        Context context = new ContextThemeWrapper(mContext, R.style.AppTheme_Main);
+        mAdapter = new CountingAdapter(context, AbsListView.CHOICE_MODE_SINGLE);
+        mRecyclerView = new RecyclerView(context);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(context));
+        // Nothing runs the animations off the main thread, so leave them out of the timings
+        mRecyclerView.setItemAnimator(null);
+        mRecyclerView.setAdapter(mAdapter);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mAdapter.swapCursor(null);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        prefs.edit().putString(mContext.getString(R.string.pref_art_pack_key), mArtPack).commit();
+        super.tearDown();
+    }
+
+    public void testSwapDispatchesOnlyChangedRows() {
+        mAdapter.swapCursor(createCursor(new int[]{0, 1, 2, 4, 5}, -1));
+
+        final List<String> updates = new ArrayList<String>();
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updates.add("all");
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                updates.add("changed " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updates.add("inserted " + positionStart + " " + itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updates.add("removed " + positionStart + " " + itemCount);
+            }
+        });
+
+        // Day 0 is gone, day 2 is warmer, day 3 is new and day 6 is added at the end.  Day 1
+        // takes the today layout.
+        mAdapter.swapCursor(createCursor(new int[]{1, 2, 3, 4, 5, 6}, 2));
+        assertEquals(Arrays.asList("removed 0 1", "changed 1 1", "inserted 2 1",
+                "inserted 5 1", "changed 0 1"), updates);
+        assertEquals(6, mAdapter.getItemCount());
+        assertEquals(TEST_DATE + DAY_IN_MILLIS, mAdapter.getItemId(0));
+
+        // The same rows again change nothing
+        updates.clear();
+        mAdapter.swapCursor(createCursor(new int[]{1, 2, 3, 4, 5, 6}, 2));
+        assertTrue(updates.isEmpty());
+
+        // but changing the units changes every row
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_units_key);
+        String units = prefs.getString(key, null);
+        prefs.edit().putString(key, Utility.isMetric(mContext) ?
+                mContext.getString(R.string.pref_units_imperial) :
+                mContext.getString(R.string.pref_units_metric)).commit();
+        try {
+            mAdapter.swapCursor(createCursor(new int[]{1, 2, 3, 4, 5, 6}, 2));
+            assertEquals(Arrays.asList("all"), updates);
+        } finally {
+            prefs.edit().putString(key, units).commit();
+        }
+    }
+
+    public void testSelectionFollowsItsRow() {
+        mAdapter.swapCursor(createCursor(new int[]{0, 1, 2, 3, 4}, -1));
+        frame();
+        mAdapter.selectView(mRecyclerView.findViewHolderForAdapterPosition(3));
+        assertEquals(3, mAdapter.getSelectedItemPosition());
+
+        // Two days inserted before the selected one and one removed
+        mAdapter.swapCursor(createCursor(new int[]{-2, -1, 1, 2, 3, 4}, -1));
+        frame();
+        assertEquals(4, mAdapter.getSelectedItemPosition());
+
+        // and the selected day removed
+        mAdapter.swapCursor(createCursor(new int[]{-2, -1, 1, 2, 4}, -1));
+        frame();
+        assertEquals(RecyclerView.NO_POSITION, mAdapter.getSelectedItemPosition());
+    }
+
+    public void testSwapFrameTimeOnLongList() {
+        int[] days = new int[LONG_LIST_DAYS];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = i;
+        }
+        mAdapter.swapCursor(createCursor(days, -1));
+        frame();
+        int visibleRows = mRecyclerView.getChildCount();
+        assertTrue("Error: Nothing was laid out", visibleRows > 1);
+
+        // Each sync warms one visible day up and down again
+        long[] diffNanos = new long[FRAMES];
+        mAdapter.mBindCount = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            Cursor cursor = loadCursor(createCursor(days, i % 2 == 0 ? 2 : -1));
+            long start = System.nanoTime();
+            mAdapter.swapCursor(cursor);
+            frame();
+            diffNanos[i] = System.nanoTime() - start;
+        }
+        assertEquals("Error: Rows that didn't change were bound again",
+                FRAMES, mAdapter.mBindCount);
+
+        long[] rebindNanos = new long[FRAMES];
+        mAdapter.mBindCount = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            Cursor cursor = loadCursor(createCursor(days, i % 2 == 0 ? 2 : -1));
+            long start = System.nanoTime();
+            mAdapter.swapCursor(cursor);
+            mAdapter.notifyDataSetChanged();
+            frame();
+            rebindNanos[i] = System.nanoTime() - start;
+        }
+        assertTrue(mAdapter.mBindCount >= FRAMES * visibleRows);
+
+        Log.i(LOG_TAG, LONG_LIST_DAYS + " rows, " + visibleRows + " visible: " +
+                "diff " + describe(diffNanos) + ", rebinding every row " + describe(rebindNanos));
+    }
+
+    public void testScrollFrameTimeOnLongList() {
+        int[] days = new int[SCROLL_DAYS];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = i;
+        }
+        CountingCursor cursor = new CountingCursor(createCursor(days, -1));
+        mAdapter.swapCursor(loadCursor(cursor));
+        frame();
+        cursor.mMoveCount = 0;
+        mAdapter.mBindCount = 0;
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        List<Long> frameNanos = new ArrayList<Long>();
+        while (layoutManager.findLastCompletelyVisibleItemPosition() < days.length - 1) {
+            long start = System.nanoTime();
+            mRecyclerView.scrollBy(0, SCROLL_STEP);
+            frame();
+            frameNanos.add(System.nanoTime() - start);
+        }
+        assertEquals("Error: Binding a row moved the cursor", 0, cursor.mMoveCount);
+        assertTrue("Error: Not every row was bound on the way down",
+                mAdapter.mBindCount >= days.length - mRecyclerView.getChildCount());
+
+        long[] nanos = new long[frameNanos.size()];
+        int janky = 0;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = frameNanos.get(i);
+            if (nanos[i] > FRAME_BUDGET_NANOS) {
+                janky++;
+            }
+        }
+        Log.i(LOG_TAG, "Scrolling " + SCROLL_DAYS + " rows: " + nanos.length + " frames, " +
+                janky + " over budget, " + describe(nanos));
+    }
+
+    /*
+        Stands in for the Choreographer: measures and lays out the RecyclerView at the size of
+        a phone screen, which is where it binds the rows it was told about.
+     */
+    private void frame() {
+        mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    /*
+        Reads and formats the rows the way ForecastCursorLoader does on its background thread,
+        so the timings only cover what's done on the main thread.
+     */
+    private Cursor loadCursor(Cursor cursor) {
+        return new ForecastCursorLoader.ForecastCursor(cursor, ForecastRows.read(mContext, cursor));
+    }
+
+    /*
+        A forecast with a row for each of days, counted from TEST_DATE.  The row for warmerDay
+        is a degree warmer than the rest.
+     */
+    static Cursor createCursor(int[] days, int warmerDay) {
+        MatrixCursor cursor = new MatrixCursor(FORECAST_COLUMNS, days.length);
+        for (int i = 0; i < days.length; i++) {
+            int day = days[i];
+            cursor.addRow(new Object[]{
+                    i + 1,
+                    TEST_DATE + day * DAY_IN_MILLIS,
+                    "Clear",
+                    day == warmerDay ? 76 : 75,
+                    65,
+                    "99705",
+                    800,
+                    64.7488,
+                    -147.353
+            });
+        }
+        return cursor;
+    }
+
+    static String describe(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("median %.2f ms, max %.2f ms",
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Checks that Utility's cached date formats give the same strings as creating them on every
+    call did, and follow the locale and time zone when those change.  Times the two ways of
+    building a friendly day string and a julian day; the cost per call for each is written to
+    the log under this class's tag.
+ */
+public class TestUtilityBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestUtilityBenchmark.class.getSimpleName();
+
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Two weeks covers today, tomorrow, the day names and the short dates
+    static final int DAYS = 14;
+    static final int CALLS = 10000;
+
+    public void testFriendlyDayStringsAreUnchanged() {
+        long now = System.currentTimeMillis();
+        for (int day = 0; day < DAYS; day++) {
+            long date = now + day * DAY_IN_MILLIS;
+            assertEquals(getFriendlyDayStringUncached(mContext, date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals(getFriendlyDayStringUncached(mContext, date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+        }
+    }
+
+    public void testFormatsFollowLocale() {
+        long date = System.currentTimeMillis() + 3 * DAY_IN_MILLIS;
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.FRENCH);
+            assertEquals(new SimpleDateFormat("EEEE", Locale.FRENCH).format(date),
+                    Utility.getDayName(mContext, date));
+            Locale.setDefault(Locale.GERMAN);
+            assertEquals(new SimpleDateFormat("EEEE", Locale.GERMAN).format(date),
+                    Utility.getDayName(mContext, date));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    public void testJulianDayFollowsTimeZone() {
+        TimeZone timeZone = TimeZone.getDefault();
+        try {
+            // A day apart for half of every day
+            for (String id : new String[]{"Pacific/Kiritimati", "Pacific/Pago_Pago"}) {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+                Utility.onTimeZoneChanged();
+                assertEquals("Error: Wrong julian day in " + id,
+                        getJulianDayUncached(System.currentTimeMillis()),
+                        Utility.getCurrentJulianDay());
+            }
+        } finally {
+            TimeZone.setDefault(timeZone);
+            Utility.onTimeZoneChanged();
+        }
+    }
+
+    public void testFriendlyDayStringCost() {
+        long now = System.currentTimeMillis();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            getFriendlyDayStringUncached(mContext, now + (i % DAYS) * DAY_IN_MILLIS, false);
+        }
+        long uncachedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            Utility.getFriendlyDayString(mContext, now + (i % DAYS) * DAY_IN_MILLIS, false);
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "getFriendlyDayString: " + uncachedNanos / CALLS + " ns/call creating " +
+                "the formats, " + cachedNanos / CALLS + " ns/call cached");
+    }
+
+    public void testJulianDayCost() {
+        long now = System.currentTimeMillis();
+        int julianDays = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            julianDays += getJulianDayUncached(now + i * DAY_IN_MILLIS);
+        }
+        long uncachedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            julianDays -= Utility.getJulianDay(now + i * DAY_IN_MILLIS);
+        }
+        long cachedNanos = System.nanoTime() - start;
+        assertEquals(0, julianDays);
+
+        Log.i(LOG_TAG, "julian day: " + uncachedNanos / CALLS + " ns/call through Time, " +
+                cachedNanos / CALLS + " ns/call cached");
+    }
+
+    /*
+        How Utility used to find a julian day, with a new Time for each.
+     */
+    static int getJulianDayUncached(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(dateInMillis, time.gmtoff);
+    }
+
+    /*
+        How Utility.getFriendlyDayString used to work, creating everything on every call.
+     */
+    static String getFriendlyDayStringUncached(Context context, long dateInMillis,
+                                               boolean displayLongToday) {
+        int julianDay = getJulianDayUncached(dateInMillis);
+        int currentJulianDay = getJulianDayUncached(System.currentTimeMillis());
+
+        if (displayLongToday && julianDay == currentJulianDay) {
+            String monthDay = new SimpleDateFormat("MMMM dd").format(dateInMillis);
+            return String.format(context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today), monthDay));
+        } else if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return context.getString(R.string.tomorrow);
+        } else if (julianDay < currentJulianDay + 7) {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+}
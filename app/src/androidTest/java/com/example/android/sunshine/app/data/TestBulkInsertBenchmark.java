@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Times inserting a large batch of weather rows one ContentValues insert at a time, the way
+    bulkInsert used to, against the compiled statement path it uses now.  The rows per second
+    for each are written to the log under this class's tag.
+ */
+public class TestBulkInsertBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestBulkInsertBenchmark.class.getSimpleName();
+
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Days stored per location.  The rows are spread over as many locations as it takes, since
+    // android.text.format.Time, which normalizes the dates, can't go past 2037 before Lollipop.
+    static final int DAYS_PER_LOCATION = 1000;
+
+    public void setUp() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void tearDown() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void testInsert10kRows() {
+        benchmark(10000);
+    }
+
+    public void testInsert100kRows() {
+        benchmark(100000);
+    }
+
+    void benchmark(int rowCount) {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long[] locationRowIds = insertLocations(db, (rowCount - 1) / DAYS_PER_LOCATION + 1);
+
+        ContentValues[] values = createWeatherValues(locationRowIds, rowCount);
+        long start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                assertTrue(WeatherProvider.insertWeatherRow(db, value));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long rowByRowMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(rowCount, DatabaseUtils.queryNumEntries(db,
+                WeatherContract.WeatherEntry.TABLE_NAME));
+
+        db.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+
+        values = createWeatherValues(locationRowIds, rowCount);
+        start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        int inserted;
+        try {
+            inserted = WeatherProvider.bulkInsertWeather(db, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long compiledMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(rowCount, inserted);
+        assertEquals(rowCount, DatabaseUtils.queryNumEntries(db,
+                WeatherContract.WeatherEntry.TABLE_NAME));
+
+        Log.i(LOG_TAG, rowCount + " rows: " +
+                rowsPerSecond(rowCount, rowByRowMillis) + " rows/s row by row, " +
+                rowsPerSecond(rowCount, compiledMillis) + " rows/s compiled");
+        dbHelper.close();
+    }
+
+    static long rowsPerSecond(int rowCount, long millis) {
+        return rowCount * 1000L / Math.max(1, millis);
+    }
+
+    static long[] insertLocations(SQLiteDatabase db, int locationCount) {
+        long[] locationRowIds = new long[locationCount];
+        for (int i = 0; i < locationCount; i++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                    TestUtilities.TEST_LOCATION + "-" + i);
+            locationRowIds[i] = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    locationValues);
+            assertTrue(locationRowIds[i] != -1);
+        }
+        return locationRowIds;
+    }
+
+    /*
+        One row per day per location, with every column set the way the sync adapter sets them.
+     */
+    static ContentValues[] createWeatherValues(long[] locationRowIds, int rowCount) {
+        ContentValues[] values = new ContentValues[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            ContentValues weatherValues =
+                    TestUtilities.createWeatherValues(locationRowIds[i / DAYS_PER_LOCATION]);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + (i % DAYS_PER_LOCATION) * DAY_IN_MILLIS);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75 + i % 10);
+            values[i] = weatherValues;
+        }
+        return values;
+    }
+}
@@ -16,16 +16,54 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 
 import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class TestDb extends AndroidTestCase {
 
     public static final String LOG_TAG = TestDb.class.getSimpleName();
 
+    static final int QUERY_PLAN_DAYS = 60;
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // The schema exactly as each released database version created it, indexed by version.
+    // These are frozen on purpose, so never edit one; when the schema changes, add the new
+    // version's here along with its migration in WeatherDbHelper.
+    static final String[] SCHEMA_V2 = new String[] {
+            "CREATE TABLE location (_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, " +
+                    "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL  );",
+            "CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                    "location_id INTEGER NOT NULL, date INTEGER NOT NULL, " +
+                    "short_desc TEXT NOT NULL, weather_id INTEGER NOT NULL," +
+                    "min REAL NOT NULL, max REAL NOT NULL, humidity REAL NOT NULL, " +
+                    "pressure REAL NOT NULL, wind REAL NOT NULL, degrees REAL NOT NULL, " +
+                    " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                    " UNIQUE (date, location_id) ON CONFLICT REPLACE);"
+    };
+    static final String[] SCHEMA_V3 = new String[] {
+            SCHEMA_V2[0],
+            SCHEMA_V2[1],
+            "CREATE INDEX weather_location_date ON weather (location_id, date);"
+    };
+    static final String[] SCHEMA_V4 = new String[] {
+            SCHEMA_V3[0],
+            SCHEMA_V3[1],
+            SCHEMA_V3[2],
+            "CREATE TABLE today (_id INTEGER PRIMARY KEY,location_setting TEXT UNIQUE NOT NULL, " +
+                    "city_name TEXT NOT NULL, date INTEGER NOT NULL, weather_id INTEGER NOT NULL, " +
+                    "short_desc TEXT NOT NULL, high TEXT NOT NULL, low TEXT NOT NULL, " +
+                    "art_url TEXT  );"
+    };
+    static final String[][] HISTORICAL_SCHEMAS = new String[][] {
+            null, null, SCHEMA_V2, SCHEMA_V3, SCHEMA_V4
+    };
+
     // Since we want each test to start with a clean slate
     void deleteTheDatabase() {
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
@@ -55,6 +93,7 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.TodayEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -234,4 +273,196 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        Checks that every query the provider and the sync adapter run against the weather table
+        is answered through an index, so a full scan can't come back unnoticed as the stored
+        history grows.
+     */
+    public void testQueryPlansUseIndexes() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        for (int i = 0; i < QUERY_PLAN_DAYS; i++) {
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + i * DAY_IN_MILLIS);
+            assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+        }
+
+        String location = TestUtilities.TEST_LOCATION;
+        String date = Long.toString(TestUtilities.TEST_DATE);
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        // The forecast list, with and without a start date, and the detail view
+        String plan = explainQueryPlan(db, WeatherProvider.buildWeatherByLocationSettingQuery(
+                WeatherProvider.sLocationSettingSelection, sortOrder), location);
+        assertTrue("Error: Weather wasn't looked up by location and date: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        plan = explainQueryPlan(db, WeatherProvider.buildWeatherByLocationSettingQuery(
+                WeatherProvider.sLocationSettingWithStartDateSelection, sortOrder), location, date);
+        assertTrue("Error: Weather wasn't looked up by location and date: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        plan = explainQueryPlan(db, WeatherProvider.buildWeatherByLocationSettingQuery(
+                WeatherProvider.sLocationSettingAndDaySelection, null), location, date);
+        assertTrue("Error: Weather wasn't looked up by location and date: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+
+        // The unchanged row check in bulkInsert, and the sync adapter's delete of old days
+        explainQueryPlan(db, "SELECT * FROM " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherProvider.sWeatherLocationIdAndDaySelection,
+                Long.toString(locationRowId), date);
+        explainQueryPlan(db, "SELECT * FROM " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?", date);
+
+        dbHelper.close();
+    }
+
+    /*
+        Checks that upgrading a version 2 database adds the index without losing the stored
+        forecast.
+     */
+    public void testUpgradeAddsIndexAndKeepsData() {
+        long locationRowId = insertLocation();
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                TestUtilities.createWeatherValues(locationRowId)) != -1);
+
+        // Turn it back into a version 2 database
+        db.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        db.setVersion(2);
+        dbHelper.close();
+
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND name=?",
+                new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE});
+        assertTrue("Error: The upgrade didn't create the index", c.moveToFirst());
+        c.close();
+
+        c = db.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals("Error: The upgrade lost the stored weather", 1, c.getCount());
+        c.close();
+        dbHelper.close();
+    }
+
+    /*
+        Returns the query plan for sql, failing if any step of it scans a whole table or has to
+        sort the results itself.
+     */
+    String explainQueryPlan(SQLiteDatabase db, String sql, String... selectionArgs) {
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        assertTrue("Error: No query plan for " + sql, c.moveToFirst());
+        int detailIndex = c.getColumnIndex("detail");
+        StringBuilder plan = new StringBuilder();
+        do {
+            String detail = c.getString(detailIndex);
+            assertFalse("Error: Full table scan in the plan for " + sql + ": " + detail,
+                    detail.startsWith("SCAN"));
+            assertFalse("Error: Unindexed sort in the plan for " + sql + ": " + detail,
+                    detail.contains("TEMP B-TREE"));
+            plan.append(detail).append('\n');
+        } while (c.moveToNext());
+        c.close();
+        return plan.toString();
+    }
+
+    /*
+        Builds every historical schema that WeatherDbHelper knows how to migrate, fills it with a
+        forecast, and checks that opening it upgrades it to exactly the current schema without
+        losing the forecast.
+     */
+    public void testUpgradeFromEveryHistoricalSchema() {
+        assertEquals("Error: The current database version has no frozen schema in TestDb",
+                WeatherDbHelper.DATABASE_VERSION + 1, HISTORICAL_SCHEMAS.length);
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Map<String, String> currentSchema = readSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+
+        for (int version = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+                version <= WeatherDbHelper.DATABASE_VERSION; version++) {
+            deleteTheDatabase();
+            SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                    Context.MODE_PRIVATE, null);
+            for (String sql : HISTORICAL_SCHEMAS[version]) {
+                db.execSQL(sql);
+            }
+            long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            assertTrue(locationRowId != -1);
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+            db.setVersion(version);
+            db.close();
+
+            dbHelper = new WeatherDbHelper(mContext);
+            db = dbHelper.getWritableDatabase();
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals("Error: Upgrading from version " + version +
+                    " didn't produce the current schema", currentSchema, readSchema(db));
+
+            Cursor c = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null, null, null, null, null, null);
+            assertTrue("Error: Upgrading from version " + version + " lost the stored weather",
+                    c.moveToFirst());
+            TestUtilities.validateCurrentRecord("Error: Upgrading from version " + version +
+                    " changed the stored weather", c, weatherValues);
+            c.close();
+            dbHelper.close();
+        }
+    }
+
+    /*
+        Checks that a database too old to migrate is rebuilt with the current schema.
+     */
+    public void testUpgradeFromUnmigratableVersionRebuilds() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Map<String, String> currentSchema = readSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+        deleteTheDatabase();
+
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        db.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY, forecast TEXT);");
+        db.setVersion(WeatherDbHelper.OLDEST_MIGRATABLE_VERSION - 1);
+        db.close();
+
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(currentSchema, readSchema(db));
+        dbHelper.close();
+    }
+
+    /*
+        Describes every table and index in the database by its columns, so two schemas can be
+        compared without depending on how their CREATE statements were spelled.
+     */
+    Map<String, String> readSchema(SQLiteDatabase db) {
+        Map<String, String> schema = new TreeMap<String, String>();
+        Cursor master = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE name != 'android_metadata'", null);
+        while (master.moveToNext()) {
+            String type = master.getString(0);
+            String name = master.getString(1);
+            StringBuilder description = new StringBuilder(type);
+            Cursor info = db.rawQuery("PRAGMA " + ("index".equals(type) ? "index_info" : "table_info")
+                    + "(" + name + ")", null);
+            while (info.moveToNext()) {
+                description.append(" |");
+                for (int i = 0; i < info.getColumnCount(); i++) {
+                    description.append(' ').append(info.getString(i));
+                }
+            }
+            info.close();
+            schema.put(name, description.toString());
+        }
+        master.close();
+        return schema;
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the weather database can be read while a large bulk insert is in progress, the
+    way the loaders and widgets read it while a sync writes.
+ */
+public class TestDbConcurrency extends AndroidTestCase {
+
+    static final int COMMITTED_ROWS = 10;
+    static final int BULK_INSERT_ROWS = 5000;
+    static final long TIMEOUT_SECONDS = 10;
+
+    public void setUp() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void tearDown() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    public void testReadsProceedDuringBulkInsert() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // The write-ahead log is only enabled from Jelly Bean on
+            return;
+        }
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertTrue("Error: The write-ahead log isn't enabled", db.isWriteAheadLoggingEnabled());
+        assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null)
+                .toLowerCase());
+
+        // The committed rows go to the first location, the bulk insert to the rest
+        long[] locationRowIds = TestBulkInsertBenchmark.insertLocations(db,
+                1 + BULK_INSERT_ROWS / TestBulkInsertBenchmark.DAYS_PER_LOCATION);
+        ContentValues[] committed = TestBulkInsertBenchmark.createWeatherValues(
+                new long[]{locationRowIds[0]}, COMMITTED_ROWS);
+        for (ContentValues value : committed) {
+            assertTrue(WeatherProvider.insertWeatherRow(db, value));
+        }
+
+        // The writer inserts the bulk of the rows, then holds its transaction open until the
+        // reader is done, or gives up waiting and commits anyway.
+        final CountDownLatch inserted = new CountDownLatch(1);
+        final CountDownLatch readDone = new CountDownLatch(1);
+        final boolean[] committedBeforeRead = new boolean[1];
+        final ContentValues[] bulk = TestBulkInsertBenchmark.createWeatherValues(
+                Arrays.copyOfRange(locationRowIds, 1, locationRowIds.length), BULK_INSERT_ROWS);
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                db.beginTransaction();
+                try {
+                    WeatherProvider.bulkInsertWeather(db, bulk);
+                    inserted.countDown();
+                    try {
+                        committedBeforeRead[0] = !readDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        committedBeforeRead[0] = true;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        };
+        writer.start();
+
+        assertTrue("Error: The bulk insert didn't finish",
+                inserted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        long rowsSeen = DatabaseUtils.queryNumEntries(db, WeatherContract.WeatherEntry.TABLE_NAME);
+        readDone.countDown();
+        writer.join();
+
+        assertFalse("Error: The read waited for the bulk insert to commit", committedBeforeRead[0]);
+        assertEquals("Error: The read should see only what was committed before it",
+                COMMITTED_ROWS, rowsSeen);
+        assertEquals(COMMITTED_ROWS + BULK_INSERT_ROWS,
+                DatabaseUtils.queryNumEntries(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        dbHelper.close();
+    }
+}
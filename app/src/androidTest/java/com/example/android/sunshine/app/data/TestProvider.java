@@ -15,7 +15,10 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -24,12 +27,17 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncMetricsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.TodayEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -61,6 +69,16 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                TodayEntry.CONTENT_URI,
+                null,
+                null
+        );
+        mContext.getContentResolver().delete(
+                SyncMetricsEntry.CONTENT_URI,
+                null,
+                null
+        );
 
         Cursor cursor = mContext.getContentResolver().query(
                 WeatherEntry.CONTENT_URI,
@@ -160,6 +178,12 @@ public class TestProvider extends AndroidTestCase {
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
         assertEquals("Error: the LocationEntry CONTENT_URI should return LocationEntry.CONTENT_TYPE",
                 LocationEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/today/94074
+        type = mContext.getContentResolver().getType(TodayEntry.buildTodayUri(testLocation));
+        // vnd.android.cursor.item/com.example.android.sunshine.app/today
+        assertEquals("Error: the TodayEntry CONTENT_URI with location should return TodayEntry.CONTENT_ITEM_TYPE",
+                TodayEntry.CONTENT_ITEM_TYPE, type);
     }
 
 
@@ -512,4 +536,249 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Re-inserting days that haven't changed shouldn't write anything, so a sync that brings
+    // back the same forecast doesn't wake up the widgets and loaders.
+    public void testBulkInsertSkipsUnchangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        // The same forecast again
+        bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals("Error: Unchanged rows were rewritten", 0, insertCount);
+
+        // Now with one day changed
+        bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        bulkInsertContentValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals("Error: Only the changed row should be written", 1, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToPosition(3);
+        TestUtilities.validateCurrentRecord("testBulkInsertSkipsUnchangedRows.  Error validating " +
+                "the changed WeatherEntry", cursor, bulkInsertContentValues[3]);
+        cursor.close();
+    }
+
+    /*
+        Checks that repeating a weather by location query is answered from the provider's
+        cache, and that a write empties it.
+     */
+    public void testQueryCache() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            // ContentResolver.call() isn't available
+            return;
+        }
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        Uri weatherUri = WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        Bundle before = getQueryCacheStats();
+
+        Cursor cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("testQueryCache.  Error validating the first query",
+                cursor, weatherValues);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("testQueryCache.  Error validating the cached query",
+                cursor, weatherValues);
+        cursor.close();
+
+        Bundle after = getQueryCacheStats();
+        assertEquals("Error: Expected the first query to miss", 1,
+                after.getInt(WeatherContract.KEY_QUERY_CACHE_MISSES) -
+                        before.getInt(WeatherContract.KEY_QUERY_CACHE_MISSES));
+        assertEquals("Error: Expected the repeated query to hit", 1,
+                after.getInt(WeatherContract.KEY_QUERY_CACHE_HITS) -
+                        before.getInt(WeatherContract.KEY_QUERY_CACHE_HITS));
+
+        // A write has to be visible to the next query
+        ContentValues updatedValues = new ContentValues(weatherValues);
+        updatedValues.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updatedValues, null, null);
+
+        cursor = mContext.getContentResolver().query(weatherUri, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("testQueryCache.  Error validating the query after " +
+                "an update", cursor, updatedValues);
+        cursor.close();
+    }
+
+    /*
+        Checks that a batch stores a new location and the days that refer back to its id in one
+        go, and that the same batch again reuses the stored location and writes nothing.
+     */
+    public void testApplyBatch() throws Exception {
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                weatherObserver);
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, createForecastBatch());
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        assertTrue(locationRowId != -1);
+        for (int i = 1; i < results.length; i++) {
+            assertTrue("Error: Weather row " + i + " wasn't written",
+                    ContentUris.parseId(results[i].uri) > 0);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        int locationKeyIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_LOC_KEY);
+        while (cursor.moveToNext()) {
+            assertEquals("Error: The back-reference didn't give the weather its location",
+                    locationRowId, cursor.getLong(locationKeyIndex));
+        }
+        cursor.close();
+
+        // The same forecast again
+        results = mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                createForecastBatch());
+        assertEquals("Error: The stored location should have been reused",
+                locationRowId, ContentUris.parseId(results[0].uri));
+        for (int i = 1; i < results.length; i++) {
+            assertEquals("Error: Unchanged weather row " + i + " was rewritten",
+                    WeatherEntry.CONTENT_URI, results[i].uri);
+        }
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        A batch like the sync adapter's: the North Pole, then its days, which take its id from
+        the first operation.
+     */
+    private static ArrayList<ContentProviderOperation> createForecastBatch() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues weatherValues : createBulkInsertWeatherValues(0)) {
+            weatherValues.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        return operations;
+    }
+
+    /*
+        Checks that a location's today snapshot can be read back by its location setting, and
+        that a new snapshot replaces the old one and notifies whoever is showing it.
+     */
+    public void testTodaySnapshot() {
+        ContentValues todayValues = TestUtilities.createTodayValues();
+        Uri insertUri = mContext.getContentResolver().insert(TodayEntry.CONTENT_URI, todayValues);
+        Uri todayUri = TodayEntry.buildTodayUri(TestUtilities.TEST_LOCATION);
+        assertEquals(todayUri, insertUri);
+
+        Cursor cursor = mContext.getContentResolver().query(todayUri, null, null, null, null);
+        assertEquals("Error: Expected exactly one snapshot", 1, cursor.getCount());
+        TestUtilities.validateCursor("testTodaySnapshot.  Error validating the snapshot",
+                cursor, todayValues);
+
+        cursor = mContext.getContentResolver().query(todayUri, null, null, null, null);
+        TestUtilities.TestContentObserver tco = TestUtilities.getTestContentObserver();
+        cursor.registerContentObserver(tco);
+
+        ContentValues updatedValues = new ContentValues(todayValues);
+        updatedValues.put(TodayEntry.COLUMN_HIGH, "99\u00B0");
+        mContext.getContentResolver().insert(TodayEntry.CONTENT_URI, updatedValues);
+
+        tco.waitForNotificationOrFail();
+        cursor.unregisterContentObserver(tco);
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(todayUri, null, null, null, null);
+        assertEquals("Error: The new snapshot didn't replace the old one", 1, cursor.getCount());
+        TestUtilities.validateCursor("testTodaySnapshot.  Error validating the new snapshot",
+                cursor, updatedValues);
+
+        // Other locations don't have one yet
+        cursor = mContext.getContentResolver().query(TodayEntry.buildTodayUri("94043"),
+                null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Checks that the provider keeps only the newest rows of sync metrics, oldest first, and
+        that deleting them clears them all.
+     */
+    public void testSyncMetrics() {
+        int rowCount = WeatherProvider.SYNC_METRICS_CAPACITY + 5;
+        long lastId = 0;
+        for (int i = 0; i < rowCount; i++) {
+            ContentValues metricsValues = new ContentValues();
+            metricsValues.put(SyncMetricsEntry.COLUMN_START_TIME, (long) i);
+            metricsValues.put(SyncMetricsEntry.COLUMN_TOTAL_MILLIS, (long) i * 10);
+            Uri metricsUri = mContext.getContentResolver().insert(
+                    SyncMetricsEntry.CONTENT_URI, metricsValues);
+            long id = ContentUris.parseId(metricsUri);
+            assertTrue("Error: Ids should keep increasing", id > lastId);
+            lastId = id;
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(SyncMetricsEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Only the newest rows should be kept",
+                WeatherProvider.SYNC_METRICS_CAPACITY, cursor.getCount());
+        int startTimeIndex = cursor.getColumnIndex(SyncMetricsEntry.COLUMN_START_TIME);
+        int totalIndex = cursor.getColumnIndex(SyncMetricsEntry.COLUMN_TOTAL_MILLIS);
+        long expected = rowCount - WeatherProvider.SYNC_METRICS_CAPACITY;
+        while (cursor.moveToNext()) {
+            assertEquals(expected, cursor.getLong(startTimeIndex));
+            assertEquals(expected * 10, cursor.getLong(totalIndex));
+            expected++;
+        }
+        cursor.close();
+
+        int deleted = mContext.getContentResolver().delete(SyncMetricsEntry.CONTENT_URI,
+                null, null);
+        assertEquals(WeatherProvider.SYNC_METRICS_CAPACITY, deleted);
+        cursor = mContext.getContentResolver().query(SyncMetricsEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    Bundle getQueryCacheStats() {
+        return mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_QUERY_CACHE_STATS, null, null);
+    }
 }
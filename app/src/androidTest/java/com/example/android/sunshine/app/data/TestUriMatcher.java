@@ -36,6 +36,11 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/today"
+    private static final Uri TEST_TODAY_DIR = WeatherContract.TodayEntry.CONTENT_URI;
+    private static final Uri TEST_TODAY_WITH_LOCATION = WeatherContract.TodayEntry.buildTodayUri(LOCATION_QUERY);
+    // content://com.example.android.sunshine.app/sync_metrics"
+    private static final Uri TEST_SYNC_METRICS_DIR = WeatherContract.SyncMetricsEntry.CONTENT_URI;
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +58,11 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The TODAY URI was matched incorrectly.",
+                testMatcher.match(TEST_TODAY_DIR), WeatherProvider.TODAY);
+        assertEquals("Error: The TODAY WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_TODAY_WITH_LOCATION), WeatherProvider.TODAY_WITH_LOCATION);
+        assertEquals("Error: The SYNC METRICS URI was matched incorrectly.",
+                testMatcher.match(TEST_SYNC_METRICS_DIR), WeatherProvider.SYNC_METRICS);
     }
 }
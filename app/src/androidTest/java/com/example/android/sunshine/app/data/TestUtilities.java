@@ -77,6 +77,23 @@ public class TestUtilities extends AndroidTestCase {
         return weatherValues;
     }
 
+    /*
+        A today snapshot of the weather createWeatherValues makes, for the North Pole.
+     */
+    static ContentValues createTodayValues() {
+        ContentValues todayValues = new ContentValues();
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_CITY_NAME, "North Pole");
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_DATE, TEST_DATE);
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_WEATHER_ID, 321);
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_SHORT_DESC, "Asteroids");
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_HIGH, "75\u00B0");
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_LOW, "65\u00B0");
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_ART_URL,
+                "http://upload.wikimedia.org/wikipedia/commons/7/7e/Stormy_sky.jpg");
+        return todayValues;
+    }
+
     /*
         Students: You can uncomment this helper function once you have finished creating the
         LocationEntry part of the WeatherContract.
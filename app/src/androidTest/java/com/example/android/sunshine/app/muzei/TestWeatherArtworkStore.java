@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentResolver;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+    Stores a wallpaper the way the Muzei source does, with the image served from the app's own
+    resources so Glide fetches and decodes it as it would a download, and checks that it's
+    transcoded once, kept, and readable through its content URI.
+ */
+public class TestWeatherArtworkStore extends AndroidTestCase {
+
+    private WeatherArtworkStore mStore;
+    private String mImageUrl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteArtwork();
+        mStore = new WeatherArtworkStore(mContext);
+        mImageUrl = "android.resource://" + mContext.getPackageName() + "/drawable/art_clear";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteArtwork();
+        super.tearDown();
+    }
+
+    public void testArtworkIsStoredOnce() {
+        Uri uri = mStore.getArtworkUri(mImageUrl);
+        assertNotNull("Error: The artwork wasn't stored", uri);
+        assertEquals(ContentResolver.SCHEME_CONTENT, uri.getScheme());
+        assertEquals(mContext.getString(R.string.muzei_artwork_authority), uri.getAuthority());
+
+        File file = mStore.getFile(mImageUrl);
+        assertTrue(file.isFile());
+
+        // Asking again serves the same file without fetching it again
+        long lastModified = 1000 * 1000 * 1000;
+        assertTrue(file.setLastModified(lastModified));
+        assertEquals(uri, mStore.getArtworkUri(mImageUrl));
+        assertEquals("Error: Stored artwork was written again",
+                lastModified, file.lastModified());
+    }
+
+    public void testArtworkIsReadableAsJpeg() throws IOException {
+        Uri uri = mStore.getArtworkUri(mImageUrl);
+        assertNotNull(uri);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = mContext.getContentResolver().openInputStream(uri);
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        assertEquals("image/jpeg", options.outMimeType);
+        assertTrue(options.outWidth > 0 && options.outHeight > 0);
+    }
+
+    public void testConditionsSharingAnImageShareTheirToken() {
+        // Light and moderate rain have the same picture, clear skies a different one
+        assertEquals(mStore.getToken(Utility.getImageUrlForWeatherCondition(500)),
+                mStore.getToken(Utility.getImageUrlForWeatherCondition(501)));
+        assertFalse(mStore.getToken(Utility.getImageUrlForWeatherCondition(500))
+                .equals(mStore.getToken(Utility.getImageUrlForWeatherCondition(800))));
+    }
+
+    private void deleteArtwork() {
+        File directory = new File(mContext.getFilesDir(), WeatherArtworkStore.DIRECTORY);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
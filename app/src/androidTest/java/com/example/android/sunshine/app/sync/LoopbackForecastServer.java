@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    A stand-in for OpenWeatherMap on the loopback interface, so the whole sync can be run and
+    timed without a network.  Point an OwmForecastSource at getBaseUrl() to use it.
+
+    It serves one gzipped forecast with an ETag for every location, each connection on its own
+    thread, and answers 304 to any request that already carries the current ETag.  The forecast
+    and its ETag can be replaced, as if the server's data changed.  Responses can be
+    held back to simulate latency, and every nth one can be replaced by an HTTP error.  It keeps
+    track of what it was asked and how many requests it was serving at once.
+ */
+class LoopbackForecastServer extends Thread {
+    static final String ETAG = "\"forecast-v1\"";
+
+    private final ServerSocket mServerSocket;
+    private final List<Map<String, String>> mRequestHeaders = new ArrayList<Map<String, String>>();
+    // A fresh path for every server, so nothing cached by an earlier run can answer for it
+    private final String mPath = "/forecast/" + System.nanoTime();
+    private byte[] mBody;
+    private String mEtag = ETAG;
+    private int mNotModifiedCount;
+    private long mResponseDelayMillis;
+    private int mErrorEvery;
+    private int mErrorStatusCode;
+    private int mErrorCount;
+    private int mActiveRequests;
+    private int mMaxActiveRequests;
+
+    LoopbackForecastServer(byte[] gzippedBody) throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mBody = gzippedBody;
+    }
+
+    /**
+     * The URL to give an OwmForecastSource, which appends the query for each location.
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + mPath + "?";
+    }
+
+    URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + mServerSocket.getLocalPort() + mPath);
+    }
+
+    /**
+     * Replaces the forecast served from now on.
+     */
+    synchronized void setBody(byte[] gzippedBody) {
+        mBody = gzippedBody;
+    }
+
+    /**
+     * Replaces the forecast served from now on with a changed one, with its own ETag.
+     */
+    synchronized void setBody(byte[] gzippedBody, String etag) {
+        mBody = gzippedBody;
+        mEtag = etag;
+    }
+
+    synchronized byte[] getBody() {
+        return mBody;
+    }
+
+    /**
+     * Holds every response back for a while, so concurrent requests overlap.
+     */
+    synchronized void setResponseDelay(long millis) {
+        mResponseDelayMillis = millis;
+    }
+
+    /**
+     * Answers every {@code every}th request, counting from the first, with {@code statusCode}
+     * and no body instead of the forecast.  0 turns this off.
+     */
+    synchronized void setErrorEvery(int every, int statusCode) {
+        mErrorEvery = every;
+        mErrorStatusCode = statusCode;
+    }
+
+    synchronized int getMaxActiveRequests() {
+        return mMaxActiveRequests;
+    }
+
+    synchronized int getRequestCount() {
+        return mRequestHeaders.size();
+    }
+
+    synchronized Map<String, String> getRequestHeaders(int request) {
+        return mRequestHeaders.get(request);
+    }
+
+    synchronized int getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    synchronized int getErrorCount() {
+        return mErrorCount;
+    }
+
+    void shutdown() throws IOException {
+        mServerSocket.close();
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                // The socket was closed by shutdown()
+                continue;
+            }
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException e) {
+                        // The client went away
+                    } catch (InterruptedException e) {
+                        // Shutting down
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                }
+            }.start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+        reader.readLine();  // the request line
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+        while ((line = reader.readLine()) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(),
+                    line.substring(colon + 1).trim());
+        }
+
+        boolean notModified;
+        int errorStatusCode = 0;
+        long responseDelayMillis;
+        byte[] body;
+        String etag;
+        synchronized (this) {
+            mRequestHeaders.add(headers);
+            notModified = mEtag.equals(headers.get("if-none-match"));
+            if (mErrorEvery > 0 && mRequestHeaders.size() % mErrorEvery == 0) {
+                errorStatusCode = mErrorStatusCode;
+                mErrorCount++;
+            } else if (notModified) {
+                mNotModifiedCount++;
+            }
+            mActiveRequests++;
+            mMaxActiveRequests = Math.max(mMaxActiveRequests, mActiveRequests);
+            responseDelayMillis = mResponseDelayMillis;
+            body = mBody;
+            etag = mEtag;
+        }
+        try {
+            Thread.sleep(responseDelayMillis);
+            OutputStream out = socket.getOutputStream();
+            if (errorStatusCode != 0) {
+                out.write(("HTTP/1.1 " + errorStatusCode + " Error\r\n" +
+                        "Content-Length: 0\r\n" +
+                        "Connection: close\r\n" +
+                        "\r\n").getBytes("US-ASCII"));
+            } else if (notModified) {
+                out.write(("HTTP/1.1 304 Not Modified\r\n" +
+                        "ETag: " + etag + "\r\n" +
+                        "Connection: close\r\n" +
+                        "\r\n").getBytes("US-ASCII"));
+            } else {
+                out.write(("HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: application/json; charset=utf-8\r\n" +
+                        "Content-Encoding: gzip\r\n" +
+                        "Content-Length: " + body.length + "\r\n" +
+                        "ETag: " + etag + "\r\n" +
+                        "Connection: close\r\n" +
+                        "\r\n").getBytes("US-ASCII"));
+                out.write(body);
+            }
+            out.flush();
+        } finally {
+            synchronized (this) {
+                mActiveRequests--;
+            }
+        }
+    }
+
+    static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzipStream = new GZIPOutputStream(bytes);
+        gzipStream.write(text.getBytes("UTF-8"));
+        gzipStream.close();
+        return bytes.toByteArray();
+    }
+
+    /*
+        Builds a forecast response with the given number of days, for payloads far larger than
+        the 14 days the app asks for.  The days cycle through a few kinds of weather, so the
+        response doesn't compress unrealistically well.
+     */
+    static String buildForecastJson(int days) {
+        StringBuilder json = new StringBuilder("{\"cod\":\"200\",\"message\":0.0132,\"cnt\":")
+                .append(days).append(",\"list\":[");
+        int[] weatherIds = {800, 501, 600, 211, 741};
+        String[] descriptions = {"Clear", "Rain", "Snow", "Thunderstorm", "Fog"};
+        for (int day = 0; day < days; day++) {
+            if (day > 0) {
+                json.append(',');
+            }
+            int kind = day % weatherIds.length;
+            double min = -10 + (day * 7) % 25 + 0.25;
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f," +
+                            "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d," +
+                            "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\"," +
+                            "\"icon\":\"01d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    1419033600L + day * 86400L, min + 4, min, min + 8, min + 1, min + 3, min + 2,
+                    1000 + day % 30 + 0.5, 40 + day % 60, weatherIds[kind], descriptions[kind],
+                    descriptions[kind].toLowerCase(Locale.US), (day % 13) * 0.75, (day * 37) % 360,
+                    (day * 11) % 100));
+        }
+        json.append("],\"city\":{\"id\":5375480,\"name\":\"Mountain View\"," +
+                "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"," +
+                "\"population\":0}}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Runs the forecast fetch against LoopbackForecastServer, to check that the response comes
+    over the wire compressed, that a 304 doesn't touch the database while a changed forecast
+    or one that was never stored is written, and that syncing several locations stays within
+    its fetch limit and stores everything at once.
+ */
+public class TestForecastHttp extends AndroidTestCase {
+
+    static final String TEST_LOCATION = "99705";
+    static final double TEST_EDITED_MAX_TEMP = 99.5;
+    static final double TEST_CHANGED_MAX_TEMP = 21.75;
+    static final String TEST_CHANGED_ETAG = "\"forecast-v2\"";
+    static final int TEST_LOCATION_COUNT = 5;
+    static final int TEST_MAX_PARALLEL_FETCHES = 2;
+    static final long TEST_RESPONSE_DELAY_MILLIS = 250;
+    static final long TEST_NOTIFICATION_WAIT_MILLIS = 1000;
+
+    private LoopbackForecastServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mServer = new LoopbackForecastServer(
+                LoopbackForecastServer.gzip(TestForecastJsonParser.TEST_FORECAST_JSON));
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testResponseIsCompressed() throws Throwable {
+        HttpURLConnection connection = (HttpURLConnection) mServer.getUrl().openConnection();
+        try {
+            ForecastHttp.prepareRequest(mContext, connection);
+            connection.connect();
+            assertFalse("Error: The first request can't be a 304",
+                    ForecastHttp.isNotModified(mContext, connection));
+
+            ForecastHttp.CountingInputStream rawStream = ForecastHttp.openRawStream(connection);
+            String body = readFully(ForecastHttp.decode(connection, rawStream));
+
+            assertEquals("gzip", mServer.getRequestHeaders(0).get("accept-encoding"));
+            assertEquals("Error: The decompressed body doesn't match what was served",
+                    TestForecastJsonParser.TEST_FORECAST_JSON, body);
+            assertEquals("Error: Expected to count the compressed bytes",
+                    mServer.getBody().length, rawStream.getCount());
+            assertTrue("Error: The compressed body should be smaller than the JSON",
+                    rawStream.getCount() < body.length());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    public void testNotModifiedSkipsDatabaseWrite() throws Throwable {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        adapter.setForecastSource(new OwmForecastSource(mContext, mServer.getBaseUrl()));
+
+        adapter.syncForecast(TEST_LOCATION);
+        assertEquals("Error: The first sync should store every day",
+                3, countWeatherRows());
+
+        // Change a stored value behind the sync's back.  If the second sync wrote anything,
+        // it would put the server's value back.
+        ContentValues edit = new ContentValues();
+        edit.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, TEST_EDITED_MAX_TEMP);
+        mContext.getContentResolver().update(WeatherContract.WeatherEntry.CONTENT_URI, edit,
+                null, null);
+
+        adapter.syncForecast(TEST_LOCATION);
+
+        assertEquals("Error: Expected two requests", 2, mServer.getRequestCount());
+        assertEquals("Error: The second request should have been conditional",
+                LoopbackForecastServer.ETAG, mServer.getRequestHeaders(1).get("if-none-match"));
+        assertEquals("Error: The server should have answered 304",
+                1, mServer.getNotModifiedCount());
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[] {WeatherContract.WeatherEntry.COLUMN_MAX_TEMP}, null, null, null);
+        try {
+            assertEquals(3, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertEquals("Error: A 304 shouldn't have rewritten the weather",
+                        TEST_EDITED_MAX_TEMP, cursor.getDouble(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testChangedForecastIsStored() throws Throwable {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        adapter.setForecastSource(new OwmForecastSource(mContext, mServer.getBaseUrl()));
+
+        adapter.syncForecast(TEST_LOCATION);
+        assertEquals(16.2, getFirstMaxTemp());
+
+        // The server's forecast changes, and its ETag with it
+        mServer.setBody(LoopbackForecastServer.gzip(TestForecastJsonParser.TEST_FORECAST_JSON
+                .replace("\"max\":16.2", "\"max\":" + TEST_CHANGED_MAX_TEMP)),
+                TEST_CHANGED_ETAG);
+        adapter.syncForecast(TEST_LOCATION);
+
+        assertEquals("Error: The server shouldn't have answered 304",
+                0, mServer.getNotModifiedCount());
+        assertEquals("Error: The changed forecast wasn't stored",
+                TEST_CHANGED_MAX_TEMP, getFirstMaxTemp());
+
+        // From then on the changed forecast is the current one
+        adapter.syncForecast(TEST_LOCATION);
+        assertEquals(TEST_CHANGED_ETAG, mServer.getRequestHeaders(2).get("if-none-match"));
+        assertEquals(1, mServer.getNotModifiedCount());
+        assertEquals(TEST_CHANGED_MAX_TEMP, getFirstMaxTemp());
+    }
+
+    public void testUnstoredForecastIsStoredWhenNotModified() throws Throwable {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        OwmForecastSource source = new OwmForecastSource(mContext, mServer.getBaseUrl());
+        adapter.setForecastSource(source);
+
+        adapter.syncForecast(TEST_LOCATION);
+
+        // As if storing the forecast had failed.  The response cache still has it, and the
+        // server will say it hasn't changed.
+        deleteAllRecords();
+        ForecastHttp.resetValidators(mContext, source.buildForecastUrl(TEST_LOCATION).toString());
+
+        adapter.syncForecast(TEST_LOCATION);
+        assertEquals("Error: A forecast that was never stored should be stored",
+                3, countWeatherRows());
+    }
+
+    public void testSyncAllLocationsBoundsFetchesAndStoresOnce() throws Throwable {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        adapter.setForecastSource(new OwmForecastSource(mContext, mServer.getBaseUrl()));
+        mServer.setResponseDelay(TEST_RESPONSE_DELAY_MILLIS);
+
+        List<String> locations = new ArrayList<String>();
+        for (int i = 0; i < TEST_LOCATION_COUNT; i++) {
+            locations.add(TEST_LOCATION + "-" + i);
+        }
+
+        CountingContentObserver observer = new CountingContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, observer);
+        try {
+            adapter.syncForecasts(locations, TEST_LOCATION + "-0", TEST_MAX_PARALLEL_FETCHES);
+            // Give any extra notifications time to show up before counting them
+            Thread.sleep(TEST_NOTIFICATION_WAIT_MILLIS);
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+        }
+
+        assertEquals(TEST_LOCATION_COUNT, mServer.getRequestCount());
+        assertEquals("Error: Expected the fetches to overlap up to the limit",
+                TEST_MAX_PARALLEL_FETCHES, mServer.getMaxActiveRequests());
+        assertEquals("Error: Every location should have been stored",
+                TEST_LOCATION_COUNT * 3, countWeatherRows());
+        assertEquals("Error: Expected a single change notification for the whole pass",
+                1, observer.getChangeCount());
+    }
+
+    private double getFirstMaxTemp() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[] {WeatherContract.WeatherEntry.COLUMN_MAX_TEMP}, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getDouble(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.TodayEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        Counts change notifications.  They're delivered on the main thread.
+     */
+    static class CountingContentObserver extends ContentObserver {
+        private int mChangeCount;
+
+        CountingContentObserver() {
+            super(new Handler(Looper.getMainLooper()));
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (this) {
+                mChangeCount++;
+            }
+        }
+
+        synchronized int getChangeCount() {
+            return mChangeCount;
+        }
+    }
+
+    static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        in.close();
+        return bytes.toString("UTF-8");
+    }
+}
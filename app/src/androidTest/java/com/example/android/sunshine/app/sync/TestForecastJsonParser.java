@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/*
+    Checks that the streaming parser and the org.json parser turn the same OpenWeatherMap
+    response into exactly the same weather rows, and reject the same malformed ones.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    static final int TEST_JULIAN_START_DAY = 2457000;
+
+    // A trimmed-down but otherwise real response.  Note that "list" comes before "city" and
+    // that there are fields we don't use, which the streaming parser has to skip.
+    static final String TEST_FORECAST_JSON = "{" +
+            "\"cod\":\"200\",\"message\":0.0132,\"cnt\":3," +
+            "\"list\":[" +
+            "{\"dt\":1419033600,\"temp\":{\"day\":15.1,\"min\":10.5,\"max\":16.2,\"night\":10.5," +
+            "\"eve\":13.8,\"morn\":12.3},\"pressure\":1013.61,\"humidity\":77," +
+            "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\"," +
+            "\"icon\":\"01d\"}],\"speed\":1.21,\"deg\":215,\"clouds\":0}," +
+            "{\"dt\":1419120000,\"temp\":{\"day\":14.4,\"min\":9.1,\"max\":15.0,\"night\":9.1," +
+            "\"eve\":12.9,\"morn\":11.0},\"pressure\":1011.2,\"humidity\":82," +
+            "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\"," +
+            "\"icon\":\"10d\"},{\"id\":701,\"main\":\"Mist\",\"description\":\"mist\"," +
+            "\"icon\":\"50d\"}],\"speed\":3.6,\"deg\":180.5,\"clouds\":92,\"rain\":4.5}," +
+            "{\"dt\":1419206400,\"temp\":{\"day\":-1.5,\"min\":-4.25,\"max\":0,\"night\":-4," +
+            "\"eve\":-2,\"morn\":-3},\"pressure\":1020,\"humidity\":64," +
+            "\"weather\":[{\"id\":600,\"main\":\"Snow\",\"description\":\"light snow\"," +
+            "\"icon\":\"13d\"}],\"speed\":0,\"deg\":0,\"snow\":1.2}" +
+            "]," +
+            "\"city\":{\"id\":5375480,\"name\":\"Mountain View\"," +
+            "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"," +
+            "\"population\":0}" +
+            "}";
+
+    static final String TEST_NOT_FOUND_JSON =
+            "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+
+    public void testStreamMatchesJson() throws Throwable {
+        ForecastJsonParser.Forecast fromJson =
+                ForecastJsonParser.parseJson(TEST_FORECAST_JSON, TEST_JULIAN_START_DAY);
+        ForecastJsonParser.Forecast fromStream =
+                ForecastJsonParser.parseStream(toStream(TEST_FORECAST_JSON), TEST_JULIAN_START_DAY);
+
+        assertEquals(HttpURLConnection.HTTP_OK, fromJson.messageCode);
+        assertEquals("Error: Message codes differ", fromJson.messageCode, fromStream.messageCode);
+        assertEquals("Error: City names differ", fromJson.cityName, fromStream.cityName);
+        assertEquals("Mountain View", fromStream.cityName);
+        assertEquals(fromJson.cityLatitude, fromStream.cityLatitude);
+        assertEquals(fromJson.cityLongitude, fromStream.cityLongitude);
+
+        assertEquals("Error: Expected one row per day", 3, fromJson.weatherValues.size());
+        assertEquals("Error: Row counts differ",
+                fromJson.weatherValues.size(), fromStream.weatherValues.size());
+        for (int i = 0; i < fromJson.weatherValues.size(); i++) {
+            assertEquals("Error: Row " + i + " differs",
+                    fromJson.weatherValues.get(i), fromStream.weatherValues.get(i));
+        }
+    }
+
+    public void testErrorCode() throws Throwable {
+        ForecastJsonParser.Forecast fromJson =
+                ForecastJsonParser.parseJson(TEST_NOT_FOUND_JSON, TEST_JULIAN_START_DAY);
+        ForecastJsonParser.Forecast fromStream =
+                ForecastJsonParser.parseStream(toStream(TEST_NOT_FOUND_JSON), TEST_JULIAN_START_DAY);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, fromJson.messageCode);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, fromStream.messageCode);
+        assertEquals(0, fromStream.weatherValues.size());
+    }
+
+    public void testInvalidJson() throws Throwable {
+        try {
+            ForecastJsonParser.parseStream(toStream("{\"list\":{}}"), TEST_JULIAN_START_DAY);
+            fail("Error: A list that isn't an array should be rejected");
+        } catch (JSONException e) {
+            // expected
+        }
+        try {
+            ForecastJsonParser.parseStream(toStream("{\"list\":[]}"), TEST_JULIAN_START_DAY);
+            fail("Error: A response without a city should be rejected");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+
+    public void testMissingValuesAreRejected() throws Throwable {
+        // Each is taken out of the first day, or the city, of the test forecast
+        String[] missing = {
+                "\"pressure\":1013.61,",
+                "\"humidity\":77,",
+                ",\"speed\":1.21",
+                ",\"deg\":215",
+                "\"min\":10.5,",
+                "\"max\":16.2,",
+                "\"temp\":{\"day\":15.1,\"min\":10.5,\"max\":16.2,\"night\":10.5," +
+                        "\"eve\":13.8,\"morn\":12.3},",
+                "\"id\":800,",
+                "\"main\":\"Clear\",",
+                "{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\"," +
+                        "\"icon\":\"01d\"}",
+                "\"weather\":[{\"id\":800,\"main\":\"Clear\"," +
+                        "\"description\":\"sky is clear\",\"icon\":\"01d\"}],",
+                "\"name\":\"Mountain View\",",
+                ",\"lat\":37.386051",
+                "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},"
+        };
+        for (String value : missing) {
+            assertTrue(TEST_FORECAST_JSON.contains(value));
+            assertBothReject(TEST_FORECAST_JSON.replace(value, ""));
+        }
+
+        // A value of the wrong type is as bad as a missing one
+        assertBothReject(TEST_FORECAST_JSON.replace("\"pressure\":1013.61",
+                "\"pressure\":null"));
+        assertBothReject(TEST_FORECAST_JSON.replace("\"humidity\":77",
+                "\"humidity\":\"77%\""));
+    }
+
+    public void testEmptyStream() throws Throwable {
+        try {
+            ForecastJsonParser.parseStream(toStream(""), TEST_JULIAN_START_DAY);
+            fail("Error: An empty stream should be reported as an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /*
+        Checks that neither parser turns json into rows, so that whichever one a device uses,
+        the sync reports the response as invalid instead of storing made up values.
+     */
+    private static void assertBothReject(String json) throws IOException {
+        try {
+            ForecastJsonParser.parseJson(json, TEST_JULIAN_START_DAY);
+            fail("Error: parseJson accepted " + json);
+        } catch (JSONException e) {
+            // expected
+        }
+        try {
+            ForecastJsonParser.parseStream(toStream(json), TEST_JULIAN_START_DAY);
+            fail("Error: parseStream accepted " + json);
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+
+    static InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Intent;
+import android.content.SyncResult;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/*
+    Posts the intents GCM would deliver for pushed forecasts and runs the syncs they request,
+    against LoopbackForecastServer, to check that a push carrying the forecast is stored without
+    a fetch, that one without it, or with days that don't start today one after the other,
+    fetches only its location, that repeated or unknown pushes cost nothing, and that today's
+    snapshot is never read once it's a day old.
+ */
+public class TestForecastPush extends AndroidTestCase {
+
+    // What GCM delivers a message with
+    static final String GCM_RECEIVE_ACTION = "com.google.android.c2dm.intent.RECEIVE";
+
+    static final int TEST_DAYS = 3;
+
+    // The julian day of the epoch, as android.text.format.Time numbers them
+    static final int EPOCH_JULIAN_DAY = 2440588;
+    static final long DAY_IN_SECONDS = 60 * 60 * 24;
+
+    private LoopbackForecastServer mServer;
+    private SunshineSyncAdapter mAdapter;
+    private String mLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mServer = new LoopbackForecastServer(
+                LoopbackForecastServer.gzip(TestForecastJsonParser.TEST_FORECAST_JSON));
+        mServer.start();
+        mAdapter = new SunshineSyncAdapter(mContext, false);
+        mAdapter.setForecastSource(new OwmForecastSource(mContext, mServer.getBaseUrl()));
+        mLocation = Utility.getPreferredLocation(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        Utility.resetLocationStatus(mContext);
+        super.tearDown();
+    }
+
+    public void testPushedForecastIsStoredWithoutFetching() {
+        assertTrue(post(createForecastIntent(mLocation, 1, createDelta(0, 1, 2))));
+
+        assertEquals("Error: A push carrying the forecast shouldn't fetch it",
+                0, mServer.getRequestCount());
+        assertEquals(TEST_DAYS, countRows(WeatherContract.WeatherEntry.CONTENT_URI));
+        assertEquals("Error: Today's snapshot wasn't written",
+                1, countRows(WeatherContract.TodayEntry.buildTodayUri(mLocation)));
+        assertEquals(1, ForecastPush.getAppliedVersion(mContext, mLocation));
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+    }
+
+    public void testPushWithoutForecastFetchesItsLocation() {
+        assertTrue(post(createForecastIntent(mLocation, 1, null)));
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(TEST_DAYS, countRows(WeatherContract.WeatherEntry.CONTENT_URI));
+
+        // A forecast that can't be parsed is fetched instead
+        assertTrue(post(createForecastIntent(mLocation, 2, "{\"list\":")));
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals(2, ForecastPush.getAppliedVersion(mContext, mLocation));
+    }
+
+    public void testDeltaNotStartingTodayIsFetched() {
+        // Only the days that changed, which would be stored as today, tomorrow and the day after
+        assertTrue(post(createForecastIntent(mLocation, 1, createDelta(0, 2, 3))));
+        assertEquals("Error: A delta that skips days should be fetched instead",
+                1, mServer.getRequestCount());
+        assertEquals(TEST_DAYS, countRows(WeatherContract.WeatherEntry.CONTENT_URI));
+        assertEquals(1, ForecastPush.getAppliedVersion(mContext, mLocation));
+
+        // Composed before midnight, delivered after
+        assertTrue(post(createForecastIntent(mLocation, 2, createDelta(-1, 0, 1))));
+        assertEquals("Error: A delta starting yesterday should be fetched instead",
+                2, mServer.getRequestCount());
+        assertEquals(2, ForecastPush.getAppliedVersion(mContext, mLocation));
+    }
+
+    public void testRepeatedPushIsIgnored() {
+        assertTrue(post(createForecastIntent(mLocation, 5, createDelta(0, 1, 2))));
+
+        assertFalse("Error: GCM delivering the same message twice shouldn't sync twice",
+                post(createForecastIntent(mLocation, 5, null)));
+        assertFalse("Error: An older version shouldn't sync",
+                post(createForecastIntent(mLocation, 4, null)));
+        assertEquals(0, mServer.getRequestCount());
+
+        Intent malformed = createForecastIntent(mLocation, 6, null);
+        malformed.putExtra(ForecastPush.DATA_VERSION, "six");
+        assertFalse(post(malformed));
+    }
+
+    public void testPushForUnsavedLocationIsIgnored() {
+        assertTrue(post(createForecastIntent("nowhere", 1, null)));
+
+        assertEquals(0, mServer.getRequestCount());
+        assertEquals(0, countRows(WeatherContract.WeatherEntry.CONTENT_URI));
+        assertEquals(0, ForecastPush.getAppliedVersion(mContext, "nowhere"));
+    }
+
+    public void testStaleTodaySnapshotIsRebuilt() {
+        assertTrue(post(createForecastIntent(mLocation, 1, createDelta(0, 1, 2))));
+
+        // What a reader finds after midnight, before the next sync
+        String[] dateColumn = {WeatherContract.TodayEntry.COLUMN_DATE};
+        makeTodaySnapshotStale();
+        Cursor cursor = SunshineSyncAdapter.queryToday(mContext, mLocation, dateColumn);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Error: A snapshot from yesterday was read as today's",
+                    Utility.getCurrentJulianDay(), Utility.getJulianDay(cursor.getLong(0)));
+        } finally {
+            cursor.close();
+        }
+
+        // Without a forecast for today there's nothing to show, rather than yesterday
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        makeTodaySnapshotStale();
+        cursor = SunshineSyncAdapter.queryToday(mContext, mLocation, dateColumn);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        Builds a delta out of the test forecast, with its days dated the given number of days
+        from today.
+     */
+    private static String createDelta(int... days) {
+        String[] testDates = {"1419033600", "1419120000", "1419206400"};
+        assertEquals(testDates.length, days.length);
+        int julianStartDay = ForecastJsonParser.getJulianStartDay();
+        String delta = TestForecastJsonParser.TEST_FORECAST_JSON;
+        for (int i = 0; i < days.length; i++) {
+            // Noon UTC on the day's date
+            long date = (julianStartDay + days[i] - EPOCH_JULIAN_DAY) * DAY_IN_SECONDS
+                    + DAY_IN_SECONDS / 2;
+            delta = delta.replace("\"dt\":" + testDates[i], "\"dt\":" + date);
+        }
+        return delta;
+    }
+
+    /*
+        Builds the intent GCM delivers for a pushed forecast, with every value a string.
+     */
+    private static Intent createForecastIntent(String location, long version, String delta) {
+        Intent intent = new Intent(GCM_RECEIVE_ACTION);
+        intent.putExtra(ForecastPush.DATA_TYPE, ForecastPush.TYPE_FORECAST);
+        intent.putExtra(ForecastPush.DATA_LOCATION, location);
+        intent.putExtra(ForecastPush.DATA_VERSION, Long.toString(version));
+        if (delta != null) {
+            intent.putExtra(ForecastPush.DATA_DELTA, delta);
+        }
+        return intent;
+    }
+
+    /*
+        Stands in for GcmBroadcastReceiver and the sync manager: turns the intent into the
+        sync it would request and runs that sync right away.
+
+        Returns whether a sync was requested.
+     */
+    private boolean post(Intent intent) {
+        Bundle data = intent.getExtras();
+        assertTrue(ForecastPush.isForecastMessage(data));
+        Bundle extras = ForecastPush.buildSyncExtras(mContext, data);
+        if (extras == null) {
+            return false;
+        }
+        mAdapter.onPerformSync(null, extras, mContext.getString(R.string.content_authority), null,
+                new SyncResult());
+        return true;
+    }
+
+    /*
+        Dates the stored today snapshot a day earlier.
+     */
+    private void makeTodaySnapshotStale() {
+        Uri todayUri = WeatherContract.TodayEntry.buildTodayUri(mLocation);
+        Cursor cursor = mContext.getContentResolver().query(todayUri, null, null, null, null);
+        ContentValues todayValues = new ContentValues();
+        try {
+            assertTrue(cursor.moveToFirst());
+            DatabaseUtils.cursorRowToContentValues(cursor, todayValues);
+        } finally {
+            cursor.close();
+        }
+        todayValues.remove(WeatherContract.TodayEntry._ID);
+        todayValues.put(WeatherContract.TodayEntry.COLUMN_DATE,
+                todayValues.getAsLong(WeatherContract.TodayEntry.COLUMN_DATE)
+                        - DAY_IN_SECONDS * 1000);
+        mContext.getContentResolver().insert(WeatherContract.TodayEntry.CONTENT_URI, todayValues);
+    }
+
+    private int countRows(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.TodayEntry.CONTENT_URI, null, null);
+        ForecastPush.reset(mContext);
+        new SyncScheduler(mContext).reset();
+    }
+}
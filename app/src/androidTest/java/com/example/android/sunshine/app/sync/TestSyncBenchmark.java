@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Runs the whole sync, fetch, parse, insert and notify, against LoopbackForecastServer, with
+    latency, large payloads and errors injected.  The timings are written to the log under this
+    class's tag, so they can be compared from run to run without a network.
+ */
+public class TestSyncBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncBenchmark.class.getSimpleName();
+
+    static final String TEST_LOCATION = "99705";
+    static final int TEST_DAYS = 3;
+    static final int LATENCY_LOCATION_COUNT = 8;
+    static final long LATENCY_MILLIS = 100;
+    static final int LARGE_PAYLOAD_DAYS = 1000;
+    static final int ERROR_LOCATION_COUNT = 4;
+
+    private final List<LoopbackForecastServer> mServers = new ArrayList<LoopbackForecastServer>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (LoopbackForecastServer server : mServers) {
+            server.shutdown();
+        }
+        deleteAllRecords();
+        Utility.resetLocationStatus(mContext);
+        super.tearDown();
+    }
+
+    public void testSyncAllLocationsWithLatency() throws Throwable {
+        List<String> locations = new ArrayList<String>();
+        for (int i = 0; i < LATENCY_LOCATION_COUNT; i++) {
+            locations.add(TEST_LOCATION + "-" + i);
+        }
+
+        long[] millis = new long[2];
+        int[] maxParallelFetches = {1, SunshineSyncAdapter.DEFAULT_MAX_PARALLEL_FETCHES};
+        for (int i = 0; i < maxParallelFetches.length; i++) {
+            deleteAllRecords();
+            // A new server each time, so the response cache can't answer for it
+            LoopbackForecastServer server =
+                    startServer(TestForecastJsonParser.TEST_FORECAST_JSON);
+            server.setResponseDelay(LATENCY_MILLIS);
+            SunshineSyncAdapter adapter = createAdapter(server);
+
+            long start = SystemClock.elapsedRealtime();
+            adapter.syncForecasts(locations, locations.get(0), maxParallelFetches[i]);
+            millis[i] = SystemClock.elapsedRealtime() - start;
+
+            assertEquals(LATENCY_LOCATION_COUNT, server.getRequestCount());
+            assertEquals(LATENCY_LOCATION_COUNT * TEST_DAYS, countWeatherRows());
+        }
+        Log.i(LOG_TAG, LATENCY_LOCATION_COUNT + " locations at " + LATENCY_MILLIS + " ms: " +
+                millis[0] + " ms one at a time, " + millis[1] + " ms " +
+                maxParallelFetches[1] + " at a time");
+        assertTrue("Error: Fetching in parallel should hide some of the latency",
+                millis[1] < millis[0]);
+    }
+
+    public void testSyncLargePayload() throws Throwable {
+        LoopbackForecastServer server =
+                startServer(LoopbackForecastServer.buildForecastJson(LARGE_PAYLOAD_DAYS));
+        SunshineSyncAdapter adapter = createAdapter(server);
+
+        long start = SystemClock.elapsedRealtime();
+        adapter.syncForecast(TEST_LOCATION);
+        long millis = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+        assertEquals(LARGE_PAYLOAD_DAYS, countWeatherRows());
+        Log.i(LOG_TAG, LARGE_PAYLOAD_DAYS + " days, " + server.getBody().length +
+                " bytes compressed: " + millis + " ms");
+
+        // The sync should have recorded where the time went
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.SyncMetricsEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertTrue("Error: No sync metrics were recorded", cursor.moveToLast());
+            assertEquals(1, cursor.getInt(
+                    cursor.getColumnIndex(WeatherContract.SyncMetricsEntry.COLUMN_LOCATIONS)));
+            assertEquals(server.getBody().length, cursor.getLong(
+                    cursor.getColumnIndex(WeatherContract.SyncMetricsEntry.COLUMN_DOWNLOAD_BYTES)));
+            long totalMillis = cursor.getLong(
+                    cursor.getColumnIndex(WeatherContract.SyncMetricsEntry.COLUMN_TOTAL_MILLIS));
+            assertTrue("Error: The sync should take no longer than it was timed at",
+                    totalMillis <= millis);
+            Log.i(LOG_TAG, "Sync metrics: " + DatabaseUtils.dumpCurrentRowToString(cursor));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testSyncWithInjectedErrors() throws Throwable {
+        // Every other location fails.  One fetch at a time keeps the order of the requests, so
+        // the preferred location, which goes first, is one that succeeds.
+        LoopbackForecastServer server = startServer(TestForecastJsonParser.TEST_FORECAST_JSON);
+        server.setErrorEvery(2, HttpURLConnection.HTTP_INTERNAL_ERROR);
+        List<String> locations = new ArrayList<String>();
+        for (int i = 0; i < ERROR_LOCATION_COUNT; i++) {
+            locations.add(TEST_LOCATION + "-" + i);
+        }
+        createAdapter(server).syncForecasts(locations, locations.get(0), 1);
+
+        assertEquals(ERROR_LOCATION_COUNT / 2, server.getErrorCount());
+        assertEquals("Error: The locations that didn't fail should still be stored",
+                ERROR_LOCATION_COUNT / 2 * TEST_DAYS, countWeatherRows());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, Utility.getLocationStatus(mContext));
+
+        server = startServer(TestForecastJsonParser.TEST_FORECAST_JSON);
+        server.setErrorEvery(1, HttpURLConnection.HTTP_UNAVAILABLE);
+        createAdapter(server).syncForecast(TEST_LOCATION);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                Utility.getLocationStatus(mContext));
+
+        server = startServer("{\"list\":[]}");
+        createAdapter(server).syncForecast(TEST_LOCATION);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID,
+                Utility.getLocationStatus(mContext));
+
+        server = startServer(TestForecastJsonParser.TEST_NOT_FOUND_JSON);
+        createAdapter(server).syncForecast(TEST_LOCATION);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID,
+                Utility.getLocationStatus(mContext));
+    }
+
+    private LoopbackForecastServer startServer(String json) throws Exception {
+        LoopbackForecastServer server = new LoopbackForecastServer(
+                LoopbackForecastServer.gzip(json));
+        mServers.add(server);
+        server.start();
+        return server;
+    }
+
+    private SunshineSyncAdapter createAdapter(LoopbackForecastServer server) {
+        SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+        adapter.setForecastSource(new OwmForecastSource(mContext, server.getBaseUrl()));
+        return adapter;
+    }
+
+    private int countWeatherRows() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.TodayEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(
+                WeatherContract.SyncMetricsEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/*
+    Checks when SyncScheduler lets a sync fetch, using a clock the test moves by hand, and that
+    the sync adapter leaves the network alone while it's backing off.
+ */
+public class TestSyncScheduler extends AndroidTestCase {
+
+    static final String TEST_LOCATION = "99705";
+    static final String TEST_OTHER_LOCATION = "94043";
+    static final long TEST_START_TIME = 1419033600000L;  // December 20th, 2014
+
+    static class TestClock implements SyncScheduler.Clock {
+        long mNow = TEST_START_TIME;
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+
+    private TestClock mClock;
+    private SyncScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClock = new TestClock();
+        mScheduler = new SyncScheduler(mContext, mClock, new Random(42));
+        mScheduler.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mScheduler.reset();
+        Utility.resetLocationStatus(mContext);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.TodayEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testBackoffDoublesWithJitter() {
+        long expected = SyncScheduler.BASE_BACKOFF_MILLIS;
+        for (int failures = 1; failures <= 40; failures++) {
+            long backoff = mScheduler.getBackoffMillis(failures);
+            assertTrue("Error: The backoff after " + failures + " failures is too long",
+                    backoff <= expected);
+            assertTrue("Error: The backoff after " + failures + " failures is too short",
+                    backoff > expected / 2);
+            expected = Math.min(expected * 2, SyncScheduler.MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    public void testFailureBacksOffPeriodicSyncs() {
+        assertTrue(mScheduler.shouldFetch(false, TEST_LOCATION, false));
+
+        long backoffUntil = mScheduler.recordResult(TEST_LOCATION, false,
+                SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        assertEquals(1, mScheduler.getFailureCount());
+        assertTrue(backoffUntil > mClock.mNow);
+        assertFalse("Error: A periodic sync shouldn't fetch while backing off",
+                mScheduler.shouldFetch(false, TEST_LOCATION, false));
+        assertTrue("Error: A manual sync should ignore the backoff",
+                mScheduler.shouldFetch(true, TEST_LOCATION, false));
+
+        // The second failure backs off for longer
+        mClock.mNow = backoffUntil;
+        assertTrue(mScheduler.shouldFetch(false, TEST_LOCATION, false));
+        long secondBackoffUntil = mScheduler.recordResult(TEST_LOCATION, false,
+                SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID);
+        assertEquals(2, mScheduler.getFailureCount());
+        assertTrue(secondBackoffUntil - mClock.mNow > SyncScheduler.BASE_BACKOFF_MILLIS);
+
+        // A cancelled sync doesn't count either way
+        mClock.mNow = secondBackoffUntil;
+        assertEquals(0, mScheduler.recordResult(TEST_LOCATION, false,
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN));
+        assertEquals(2, mScheduler.getFailureCount());
+
+        // and a success ends it
+        assertEquals(0, mScheduler.recordResult(TEST_LOCATION, false,
+                SunshineSyncAdapter.LOCATION_STATUS_OK));
+        assertEquals(0, mScheduler.getFailureCount());
+        assertEquals(0, mScheduler.getBackoffUntil());
+    }
+
+    public void testBackoffEndsIfClockIsSetBack() {
+        mScheduler.recordResult(TEST_LOCATION, false,
+                SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        mClock.mNow -= SyncScheduler.MAX_BACKOFF_MILLIS;
+        assertEquals(0, mScheduler.getBackoffUntil());
+        assertTrue(mScheduler.shouldFetch(false, TEST_LOCATION, false));
+    }
+
+    public void testFreshForecastIsNotFetched() {
+        mScheduler.recordResult(TEST_LOCATION, false, SunshineSyncAdapter.LOCATION_STATUS_OK);
+
+        mClock.mNow += SyncScheduler.FRESH_MILLIS - 1;
+        assertFalse(mScheduler.shouldFetch(false, TEST_LOCATION, false));
+        assertFalse(mScheduler.shouldFetch(true, TEST_LOCATION, false));
+        assertTrue("Error: Another location was never fetched",
+                mScheduler.shouldFetch(true, TEST_OTHER_LOCATION, false));
+        assertTrue("Error: The other saved locations were never fetched",
+                mScheduler.shouldFetch(true, TEST_LOCATION, true));
+
+        mClock.mNow += 1;
+        assertTrue(mScheduler.shouldFetch(false, TEST_LOCATION, false));
+
+        // A success in the future can't be trusted
+        mScheduler.recordResult(TEST_LOCATION, true, SunshineSyncAdapter.LOCATION_STATUS_OK);
+        assertFalse(mScheduler.shouldFetch(false, TEST_LOCATION, true));
+        mClock.mNow -= 1;
+        assertTrue(mScheduler.shouldFetch(false, TEST_LOCATION, true));
+    }
+
+    public void testImmediateSyncRequestsCoalesce() {
+        assertTrue(mScheduler.requestImmediateSync());
+        mClock.mNow += SyncScheduler.COALESCE_MILLIS - 1;
+        assertFalse("Error: A second request before the sync started should be dropped",
+                mScheduler.requestImmediateSync());
+
+        // Once the sync starts, changes it may have missed need a new one
+        mScheduler.onImmediateSyncStarted();
+        assertTrue(mScheduler.requestImmediateSync());
+
+        // and a request that never started is given up on
+        mClock.mNow += SyncScheduler.COALESCE_MILLIS;
+        assertTrue(mScheduler.requestImmediateSync());
+    }
+
+    public void testPeriodicSyncLeavesNetworkAloneWhileBackingOff() throws Throwable {
+        LoopbackForecastServer server = new LoopbackForecastServer(
+                LoopbackForecastServer.gzip(TestForecastJsonParser.TEST_FORECAST_JSON));
+        server.setErrorEvery(1, HttpURLConnection.HTTP_UNAVAILABLE);
+        server.start();
+        try {
+            SunshineSyncAdapter adapter = new SunshineSyncAdapter(mContext, false);
+            adapter.setForecastSource(new OwmForecastSource(mContext, server.getBaseUrl()));
+            adapter.setScheduler(mScheduler);
+            String authority = mContext.getString(R.string.content_authority);
+
+            SyncResult syncResult = new SyncResult();
+            adapter.onPerformSync(null, createExtras(false), authority, null, syncResult);
+            assertEquals(1, server.getRequestCount());
+            assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                    Utility.getLocationStatus(mContext));
+            assertEquals("Error: The sync manager should be told to hold off",
+                    mScheduler.getBackoffUntil() / 1000, syncResult.delayUntil);
+
+            adapter.onPerformSync(null, createExtras(false), authority, null, new SyncResult());
+            assertEquals("Error: A periodic sync fetched while backing off",
+                    1, server.getRequestCount());
+
+            adapter.onPerformSync(null, createExtras(true), authority, null, new SyncResult());
+            assertEquals("Error: A manual sync should fetch even while backing off",
+                    2, server.getRequestCount());
+            assertEquals(2, mScheduler.getFailureCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Bundle createExtras(boolean manual) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(SunshineSyncAdapter.SYNC_EXTRAS_ALL_LOCATIONS, false);
+        if (manual) {
+            extras.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        }
+        return extras;
+    }
+}
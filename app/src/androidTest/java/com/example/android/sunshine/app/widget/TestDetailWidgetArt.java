@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.ContentValues;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+    Runs the detail widget's rows with remote art on, and checks that the art is fetched and
+    scaled down before the first row is asked for, so no row waits on it.  The art is served
+    from the app's own resources through android.resource URLs, so Glide goes through the same
+    fetch and decode it would for a download, without a network.  The time to the first row and
+    the latency of each row are written to the log under this class's tag.
+ */
+public class TestDetailWidgetArt extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDetailWidgetArt.class.getSimpleName();
+
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    static final int DAYS = 14;
+
+    // Clear, rain, snow, a thunderstorm and fog
+    static final int[] WEATHER_IDS = {800, 501, 600, 211, 741};
+
+    private String mArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        DetailWidgetRemoteViewsService.clearArtCache();
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String key = mContext.getString(R.string.pref_art_pack_key);
+        mArtPack = prefs.getString(key, null);
+        prefs.edit().putString(key,
+                "android.resource://" + mContext.getPackageName() + "/drawable/art_%s").commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        prefs.edit().putString(mContext.getString(R.string.pref_art_pack_key), mArtPack).commit();
+        DetailWidgetRemoteViewsService.clearArtCache();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testArtIsPrefetched() {
+        insertForecast();
+        DetailWidgetRemoteViewsService.DetailWidgetViewsFactory factory =
+                new DetailWidgetRemoteViewsService.DetailWidgetViewsFactory(mContext);
+        factory.onCreate();
+
+        long start = System.nanoTime();
+        factory.onDataSetChanged();
+        long dataSetChangedNanos = System.nanoTime() - start;
+        assertEquals(DAYS, factory.getCount());
+
+        // Every kind of weather shown was fetched once, at the size of the widget's icons
+        int iconSize = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        Set<String> artUrls = new HashSet<String>();
+        for (int weatherId : WEATHER_IDS) {
+            artUrls.add(Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+        }
+        assertEquals(WEATHER_IDS.length, artUrls.size());
+        for (String artUrl : artUrls) {
+            Bitmap art = DetailWidgetRemoteViewsService.getCachedArt(artUrl, iconSize);
+            assertNotNull("Error: Art wasn't prefetched from " + artUrl, art);
+            assertTrue("Error: Art wasn't scaled down to the icon size",
+                    art.getWidth() <= iconSize && art.getHeight() <= iconSize);
+        }
+
+        long[] rowNanos = new long[DAYS];
+        for (int position = 0; position < DAYS; position++) {
+            start = System.nanoTime();
+            RemoteViews views = factory.getViewAt(position);
+            rowNanos[position] = System.nanoTime() - start;
+            assertNotNull(views);
+        }
+        factory.onDestroy();
+
+        long[] sorted = rowNanos.clone();
+        Arrays.sort(sorted);
+        Log.i(LOG_TAG, String.format("Time to first row %.2f ms (%.2f ms prefetching), " +
+                        "rows median %.2f ms, max %.2f ms",
+                (dataSetChangedNanos + rowNanos[0]) / 1e6, dataSetChangedNanos / 1e6,
+                sorted[sorted.length / 2] / 1e6, sorted[sorted.length - 1] / 1e6));
+
+        // A second widget, or the next update, finds the art cached
+        factory = new DetailWidgetRemoteViewsService.DetailWidgetViewsFactory(mContext);
+        start = System.nanoTime();
+        factory.onDataSetChanged();
+        factory.getViewAt(0);
+        Log.i(LOG_TAG, String.format("Time to first row with the art cached %.2f ms",
+                (System.nanoTime() - start) / 1e6));
+        factory.onDestroy();
+    }
+
+    /*
+        A location for the preferred location setting, with DAYS days of weather from today.
+     */
+    private void insertForecast() {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(mContext));
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, locationValues);
+        long locationRowId = Long.parseLong(locationUri.getLastPathSegment());
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ContentValues[] weatherValues = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, today + day * DAY_IN_MILLIS);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    WEATHER_IDS[day % WEATHER_IDS.length]);
+            values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Weather");
+            values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65);
+            values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75);
+            values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+            values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+            weatherValues[day] = values;
+        }
+        assertEquals(DAYS, mContext.getContentResolver().bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_URI, weatherValues));
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
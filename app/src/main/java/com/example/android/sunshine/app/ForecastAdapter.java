@@ -30,7 +30,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -45,10 +45,16 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // What mCursor holds, formatted for binding.  This is what the RecyclerView was last told
+    // about.
+    private ForecastRows mRows = ForecastRows.EMPTY;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    // The most each layout's icon is shown at, which remote art is decoded to
+    final private int mTodayIconSize;
+    final private int mListIconSize;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +79,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows.getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -88,8 +92,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows are identified by their date, so a row keeps its view and its selection when
+        // the rows around it change.  This has to be set before ItemChoiceManager registers
+        // its observer, since it can't change once the adapter has one.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mTodayIconSize = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mListIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
     }
 
     /*
@@ -124,63 +134,55 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Everything the row shows was formatted when the cursor was loaded
+        ForecastRows.Row row = mRows.get(position);
         int defaultImage;
-        boolean useLongToday;
+        int iconSize;
+        String dayText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResource;
+                iconSize = mTodayIconSize;
+                dayText = row.todayText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResource;
+                iconSize = mListIconSize;
+                dayText = row.dayText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( row.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.artUrl)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .override(iconSize, iconSize)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        // the animator can use this to re-find the original view.  It's named after the date
+        // rather than the position, since rows that only move aren't bound again
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        forecastAdapterViewHolder.mDateView.setText(dayText);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -208,13 +210,33 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if ( position < 0 || position >= mRows.size() ) return RecyclerView.NO_ID;
+        return mRows.getDate(position);
     }
 
+    /**
+     * Shows {@code newCursor}, telling the RecyclerView only about the rows that were inserted,
+     * removed or changed since the last cursor, so the rest keep their views as they are.
+     */
     public void swapCursor(Cursor newCursor) {
+        ForecastRows oldRows = mRows;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        mRows = ForecastRows.from(mContext, newCursor);
+        if ( ForecastRows.canDiff(oldRows, mRows) ) {
+            ForecastRows.dispatchDiff(oldRows, mRows, this);
+            // When the first row was removed, the row that takes its place needs the today
+            // layout
+            if ( mUseTodayLayout && oldRows.getDate(0) < mRows.getDate(0) ) {
+                notifyItemChanged(0);
+            }
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
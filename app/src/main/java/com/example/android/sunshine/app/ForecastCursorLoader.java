@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also reads and formats the
+ * {@link ForecastRows} of each cursor on its background thread, so {@link ForecastAdapter}
+ * only has to compare them when the cursor is delivered, and only has to set them on its views
+ * when it binds a row.
+ */
+class ForecastCursorLoader extends CursorLoader {
+
+    /**
+     * A forecast cursor along with the rows read from it.
+     */
+    static class ForecastCursor extends CursorWrapper {
+        private final ForecastRows mRows;
+
+        ForecastCursor(Cursor cursor, ForecastRows rows) {
+            super(cursor);
+            mRows = rows;
+        }
+
+        ForecastRows getRows() {
+            return mRows;
+        }
+    }
+
+    ForecastCursorLoader(Context context, Uri uri, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        return new ForecastCursor(cursor, ForecastRows.read(getContext(), cursor));
+    }
+}
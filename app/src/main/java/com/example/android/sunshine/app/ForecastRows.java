@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * What the forecast list shows for each row of a forecast cursor, formatted and ready to be
+ * set on the row's views, so that binding a row doesn't touch the cursor or format anything,
+ * and so that the rows of two cursors can be compared without either being open.
+ *
+ * Rows are identified by their date, which is unique within one location's forecast, and the
+ * list is sorted by it.  That makes finding which rows were inserted, removed or changed
+ * between two copies a single pass over both, see {@link #dispatchDiff}.
+ *
+ * Reading and formatting the rows is the expensive part, so {@link ForecastCursorLoader} does
+ * that on its background thread.
+ */
+final class ForecastRows {
+
+    /**
+     * One day of the forecast, as the list shows it.
+     */
+    static final class Row {
+        final long date;
+        final int weatherId;
+        final double high;
+        final double low;
+
+        final String dayText;
+        // What the today layout shows for the day, which only differs from dayText for today
+        final String todayText;
+        final String description;
+        final String descriptionA11y;
+        final String highText;
+        final String highA11y;
+        final String lowText;
+        final String lowA11y;
+        final int iconResource;
+        final int artResource;
+        // Where to load the icon from, or null to use the app's own icons
+        final String artUrl;
+        final String transitionName;
+
+        Row(Context context, long date, int weatherId, double high, double low,
+            boolean isToday, boolean localGraphics) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.high = high;
+            this.low = low;
+
+            dayText = Utility.getFriendlyDayString(context, date, false);
+            todayText = isToday ? Utility.getFriendlyDayString(context, date, true) : dayText;
+            description = Utility.getStringForWeatherCondition(context, weatherId);
+            descriptionA11y = context.getString(R.string.a11y_forecast, description);
+            highText = Utility.formatTemperature(context, high);
+            highA11y = context.getString(R.string.a11y_high_temp, highText);
+            lowText = Utility.formatTemperature(context, low);
+            lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+            iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+            artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+            artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+            transitionName = "iconView" + date;
+        }
+
+        boolean isSameAs(Row other) {
+            return date == other.date
+                    && weatherId == other.weatherId
+                    && Double.compare(high, other.high) == 0
+                    && Double.compare(low, other.low) == 0;
+        }
+    }
+
+    static final ForecastRows EMPTY = new ForecastRows(0);
+
+    private final Row[] mRows;
+
+    // Whether the dates go up strictly, which the diff relies on
+    private boolean mSorted = true;
+
+    // The settings the rows were formatted with.  When any of them change every row looks
+    // different, even though the data is the same.
+    private int mJulianDay;
+    private boolean mMetric;
+    private String mArtPack;
+
+    private ForecastRows(int count) {
+        mRows = new Row[count];
+    }
+
+    /**
+     * Returns the rows of {@code cursor}, reading them now if the cursor didn't come from
+     * {@link ForecastCursorLoader}.
+     */
+    static ForecastRows from(Context context, Cursor cursor) {
+        if (cursor == null) {
+            return EMPTY;
+        } else if (cursor instanceof ForecastCursorLoader.ForecastCursor) {
+            return ((ForecastCursorLoader.ForecastCursor) cursor).getRows();
+        }
+        return read(context, cursor);
+    }
+
+    /**
+     * Reads and formats the rows of a cursor with {@link ForecastFragment}'s columns.  The
+     * cursor is left before its first row.
+     */
+    static ForecastRows read(Context context, Cursor cursor) {
+        ForecastRows rows = new ForecastRows(cursor.getCount());
+        rows.mJulianDay = Utility.getCurrentJulianDay();
+        rows.mMetric = Utility.isMetric(context);
+        rows.mArtPack = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(context.getString(R.string.pref_art_pack_key), null);
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            rows.mRows[i] = new Row(context, date,
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    Utility.getJulianDay(date) == rows.mJulianDay, localGraphics);
+            if (i > 0 && date <= rows.mRows[i - 1].date) {
+                rows.mSorted = false;
+            }
+        }
+        cursor.moveToPosition(-1);
+        return rows;
+    }
+
+    int size() {
+        return mRows.length;
+    }
+
+    Row get(int position) {
+        return mRows[position];
+    }
+
+    long getDate(int position) {
+        return mRows[position].date;
+    }
+
+    /**
+     * Returns whether the changes from {@code oldRows} to {@code newRows} can be found with
+     * {@link #dispatchDiff}.  When they can't, every row needs to be bound again.
+     */
+    static boolean canDiff(ForecastRows oldRows, ForecastRows newRows) {
+        // Going to or from an empty list is better shown all at once
+        if (oldRows.size() == 0 || newRows.size() == 0) {
+            return false;
+        }
+        // "Today" and "Tomorrow" mean different days once the day is over
+        return oldRows.mSorted && newRows.mSorted
+                && oldRows.mJulianDay == newRows.mJulianDay
+                && oldRows.mMetric == newRows.mMetric
+                && (oldRows.mArtPack == null ? newRows.mArtPack == null
+                        : oldRows.mArtPack.equals(newRows.mArtPack));
+    }
+
+    /**
+     * Tells {@code adapter} which rows were removed, inserted and changed going from
+     * {@code oldRows} to {@code newRows}.  The adapter must already be showing
+     * {@code newRows}, and {@link #canDiff} must be true.
+     */
+    static void dispatchDiff(ForecastRows oldRows, ForecastRows newRows,
+                             RecyclerView.Adapter adapter) {
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Every row before newIndex is where it will end up, so newIndex is also the position
+        // in the adapter of the next row to compare.
+        while (oldIndex < oldRows.mRows.length || newIndex < newRows.mRows.length) {
+            int start = newIndex;
+            if (isRemoved(oldRows, oldIndex, newRows, newIndex)) {
+                int removed = 0;
+                do {
+                    oldIndex++;
+                    removed++;
+                } while (isRemoved(oldRows, oldIndex, newRows, newIndex));
+                adapter.notifyItemRangeRemoved(start, removed);
+            } else if (isInserted(oldRows, oldIndex, newRows, newIndex)) {
+                do {
+                    newIndex++;
+                } while (isInserted(oldRows, oldIndex, newRows, newIndex));
+                adapter.notifyItemRangeInserted(start, newIndex - start);
+            } else if (!oldRows.mRows[oldIndex].isSameAs(newRows.mRows[newIndex])) {
+                do {
+                    oldIndex++;
+                    newIndex++;
+                } while (oldIndex < oldRows.mRows.length && newIndex < newRows.mRows.length
+                        && oldRows.mRows[oldIndex].date == newRows.mRows[newIndex].date
+                        && !oldRows.mRows[oldIndex].isSameAs(newRows.mRows[newIndex]));
+                adapter.notifyItemRangeChanged(start, newIndex - start);
+            } else {
+                oldIndex++;
+                newIndex++;
+            }
+        }
+    }
+
+    private static boolean isRemoved(ForecastRows oldRows, int oldIndex,
+                                     ForecastRows newRows, int newIndex) {
+        return oldIndex < oldRows.mRows.length && (newIndex == newRows.mRows.length
+                || oldRows.mRows[oldIndex].date < newRows.mRows[newIndex].date);
+    }
+
+    private static boolean isInserted(ForecastRows oldRows, int oldIndex,
+                                      ForecastRows newRows, int newIndex) {
+        return newIndex < newRows.mRows.length && (oldIndex == oldRows.mRows.length
+                || newRows.mRows[newIndex].date < oldRows.mRows[oldIndex].date);
+    }
+}
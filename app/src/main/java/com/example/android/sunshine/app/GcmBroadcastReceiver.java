@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 
+import com.example.android.sunshine.app.sync.ForecastPush;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 
 public class GcmBroadcastReceiver extends BroadcastReceiver {
@@ -56,12 +57,17 @@ public class GcmBroadcastReceiver extends BroadcastReceiver {
             if (GoogleCloudMessaging.MESSAGE_TYPE_MESSAGE.equals(messageType)) {
                 // Is this our message?? Better be if you're going to act on it!
                 if (MainActivity.PROJECT_NUMBER.equals(extras.getString(EXTRA_SENDER))) {
-                    // Process message and then post a notification of the received message.
-                    String weather = extras.getString(EXTRA_WEATHER);
-                    String location = extras.getString(EXTRA_LOCATION);
-                    String alert = "Heads up: " + weather + " in " + location + "!";
+                    if (ForecastPush.isForecastMessage(extras)) {
+                        // A new forecast, which replaces the periodic sync for that location
+                        ForecastPush.onForecastMessage(context, extras);
+                    } else {
+                        // Process message and then post a notification of the received message.
+                        String weather = extras.getString(EXTRA_WEATHER);
+                        String location = extras.getString(EXTRA_LOCATION);
+                        String alert = "Heads up: " + weather + " in " + location + "!";
 
-                    sendNotification(context, alert);
+                        sendNotification(context, alert);
+                    }
                 }
 
                 Log.i(LOG_TAG, "Received: " + extras.toString());
@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  It follows
+ * the adapter's notifications, moving the selection along with rows that are inserted or
+ * removed before it, and dropping it when its row is removed.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,6 +45,21 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, -itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +69,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -188,6 +205,35 @@ public class ItemChoiceManager {
         }
     }
 
+    /**
+     * Moves the checked positions at or after {@code positionStart} by {@code offset}.  A
+     * negative offset means the rows from {@code positionStart} up to {@code positionStart -
+     * offset} were removed, and those are unchecked.
+     */
+    void offsetCheckedPositions(int positionStart, int offset) {
+        int removedEnd = positionStart - Math.min(offset, 0);
+
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            final int position = mCheckStates.keyAt(i);
+            if (position < positionStart) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            } else if (position >= removedEnd) {
+                checkStates.put(position + offset, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            final int position = mCheckedIdStates.valueAt(i);
+            if (position >= removedEnd) {
+                mCheckedIdStates.setValueAt(i, position + offset);
+            } else if (position >= positionStart) {
+                mCheckedIdStates.removeAt(i);
+            }
+        }
+    }
+
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
         boolean checked = isItemChecked(position);
         if (vh.itemView instanceof Checkable) {
@@ -327,5 +327,8 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         editor.putString(PROPERTY_REG_ID, regId);
         editor.putInt(PROPERTY_APP_VERSION, appVersion);
         editor.commit();
+
+        // New forecasts are pushed to registered devices, so they can poll less often
+        SunshineSyncAdapter.setPushEnabled(context, regId != null);
     }
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Application;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * Listens for time zone changes for as long as the process runs, which is as long as
+ * {@link Utility} has date formats to drop.  Declaring the receiver in the manifest instead
+ * would start the process for every change, only to drop formats it doesn't have yet.
+ */
+public class SunshineApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        registerReceiver(new TimeZoneChangedReceiver(),
+                new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.cache.DiskLruCacheWrapper;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Sizes Glide's caches for what Sunshine loads, which is the same handful of weather art
+ * images over and over, at a few icon sizes.  Registered in the manifest.
+ *
+ * Art is loaded with {@link com.bumptech.glide.load.engine.DiskCacheStrategy#ALL}, so the
+ * downloaded image is kept on disk next to each size it was decoded at.  The sync adapter
+ * downloads the art of the coming days as soon as they're stored, so the list, the detail
+ * view and the widgets only ever decode it from disk.
+ */
+public class SunshineGlideModule implements GlideModule {
+
+    // Every kind of weather's art at the list's, the today row's and the notification's icon
+    // sizes comes to a few megabytes, even at xxxhdpi
+    private static final int MEMORY_CACHE_SIZE = 4 * 1024 * 1024;
+
+    // Room for two art packs, plus what each was decoded at, many times over
+    private static final int DISK_CACHE_SIZE = 16 * 1024 * 1024;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        // Devices with little memory get even less
+        MemorySizeCalculator calculator = new MemorySizeCalculator(context);
+        builder.setMemoryCache(new LruResourceCache(
+                Math.min(calculator.getMemoryCacheSize(), MEMORY_CACHE_SIZE)));
+        // In the cache directory, which unlike memory is still there the next time the
+        // process starts
+        builder.setDiskCache(DiskLruCacheWrapper.get(Glide.getPhotoCacheDir(context),
+                DISK_CACHE_SIZE));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+        // Nothing to do
+    }
+}
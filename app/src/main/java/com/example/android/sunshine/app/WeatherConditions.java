@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What Sunshine shows for each OpenWeatherMap condition id, looked up in tables indexed by the
+ * id instead of working it out on every call.  Backs Utility's *ForWeatherCondition methods,
+ * which are called for every row of the list and the detail widget each time they're built.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+final class WeatherConditions {
+
+    // The range of ids OpenWeatherMap uses, which the tables cover
+    static final int MIN_ID = 200;
+    static final int MAX_ID = 962;
+
+    // The kinds of weather that have their own icon, art and image, which index the tables
+    // below
+    private static final byte NONE = -1;
+    private static final byte STORM = 0;
+    private static final byte LIGHT_RAIN = 1;
+    private static final byte RAIN = 2;
+    private static final byte SNOW = 3;
+    private static final byte FOG = 4;
+    // A storm, but pictured by the dust ahead of it
+    private static final byte DUST = 5;
+    private static final byte CLEAR = 6;
+    private static final byte LIGHT_CLOUDS = 7;
+    private static final byte CLOUDS = 8;
+
+    private static final int[] ICONS = {
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_storm,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+
+    private static final int[] ARTS = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_storm,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
+    // What an art pack's URL format is filled in with
+    private static final String[] ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "storm",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // The ids with a description of their own, each followed by its string.  Every other id in
+    // a thunderstorm or drizzle group shares the group's.
+    private static final int[] DESCRIPTIONS = {
+            500, R.string.condition_500,
+            501, R.string.condition_501,
+            502, R.string.condition_502,
+            503, R.string.condition_503,
+            504, R.string.condition_504,
+            511, R.string.condition_511,
+            520, R.string.condition_520,
+            531, R.string.condition_531,
+            600, R.string.condition_600,
+            601, R.string.condition_601,
+            602, R.string.condition_602,
+            611, R.string.condition_611,
+            612, R.string.condition_612,
+            615, R.string.condition_615,
+            616, R.string.condition_616,
+            620, R.string.condition_620,
+            621, R.string.condition_621,
+            622, R.string.condition_622,
+            701, R.string.condition_701,
+            711, R.string.condition_711,
+            721, R.string.condition_721,
+            731, R.string.condition_731,
+            741, R.string.condition_741,
+            751, R.string.condition_751,
+            761, R.string.condition_761,
+            762, R.string.condition_762,
+            771, R.string.condition_771,
+            781, R.string.condition_781,
+            800, R.string.condition_800,
+            801, R.string.condition_801,
+            802, R.string.condition_802,
+            803, R.string.condition_803,
+            804, R.string.condition_804,
+            900, R.string.condition_900,
+            901, R.string.condition_901,
+            902, R.string.condition_902,
+            903, R.string.condition_903,
+            904, R.string.condition_904,
+            905, R.string.condition_905,
+            906, R.string.condition_906,
+            951, R.string.condition_951,
+            952, R.string.condition_952,
+            953, R.string.condition_953,
+            954, R.string.condition_954,
+            955, R.string.condition_955,
+            956, R.string.condition_956,
+            957, R.string.condition_957,
+            958, R.string.condition_958,
+            959, R.string.condition_959,
+            960, R.string.condition_960,
+            961, R.string.condition_961,
+            962, R.string.condition_962
+    };
+
+    // Indexed by id - MIN_ID
+    private static final byte[] sKinds = new byte[MAX_ID - MIN_ID + 1];
+    private static final int[] sDescriptionIds = new int[MAX_ID - MIN_ID + 1];
+
+    static {
+        Arrays.fill(sKinds, NONE);
+        setKind(200, 232, STORM);
+        setKind(300, 321, LIGHT_RAIN);
+        setKind(500, 504, RAIN);
+        setKind(511, 511, SNOW);
+        setKind(520, 531, RAIN);
+        setKind(600, 622, SNOW);
+        setKind(701, 761, FOG);
+        setKind(781, 781, DUST);
+        setKind(800, 800, CLEAR);
+        setKind(801, 801, LIGHT_CLOUDS);
+        setKind(802, 804, CLOUDS);
+
+        Arrays.fill(sDescriptionIds, 200 - MIN_ID, 232 - MIN_ID + 1, R.string.condition_2xx);
+        Arrays.fill(sDescriptionIds, 300 - MIN_ID, 321 - MIN_ID + 1, R.string.condition_3xx);
+        for (int i = 0; i < DESCRIPTIONS.length; i += 2) {
+            sDescriptionIds[DESCRIPTIONS[i] - MIN_ID] = DESCRIPTIONS[i + 1];
+        }
+    }
+
+    private static void setKind(int firstId, int lastId, byte kind) {
+        Arrays.fill(sKinds, firstId - MIN_ID, lastId - MIN_ID + 1, kind);
+    }
+
+    /**
+     * The descriptions of one locale, resolved the first time each is asked for.  Threads may
+     * race to fill in the same one, which only costs resolving it twice.
+     */
+    private static final class Descriptions {
+        final Locale locale;
+        final String[] strings = new String[MAX_ID - MIN_ID + 1];
+
+        Descriptions(Locale locale) {
+            this.locale = locale;
+        }
+    }
+
+    private static volatile Descriptions sDescriptions;
+
+    /**
+     * An art pack's URL for each kind of weather.
+     */
+    private static final class ArtUrls {
+        final String format;
+        final String[] urls = new String[ART_NAMES.length];
+
+        ArtUrls(String format) {
+            this.format = format;
+            for (int kind = 0; kind < ART_NAMES.length; kind++) {
+                urls[kind] = String.format(Locale.US, format, ART_NAMES[kind]);
+            }
+        }
+    }
+
+    private static volatile ArtUrls sArtUrls;
+
+    private WeatherConditions() {
+    }
+
+    private static int getKind(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return NONE;
+        }
+        return sKinds[weatherId - MIN_ID];
+    }
+
+    static int getIconResource(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind == NONE ? -1 : ICONS[kind];
+    }
+
+    static int getArtResource(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind == NONE ? -1 : ARTS[kind];
+    }
+
+    static String getArtUrl(String formatArtUrl, int weatherId) {
+        int kind = getKind(weatherId);
+        if (kind == NONE) {
+            return null;
+        }
+        ArtUrls artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.format.equals(formatArtUrl)) {
+            artUrls = new ArtUrls(formatArtUrl);
+            sArtUrls = artUrls;
+        }
+        return artUrls.urls[kind];
+    }
+
+    static String getImageUrl(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind == NONE ? null : IMAGE_URLS[kind];
+    }
+
+    static String getDescription(Context context, int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return context.getString(R.string.condition_unknown, weatherId);
+        }
+        Locale locale = context.getResources().getConfiguration().locale;
+        Descriptions descriptions = sDescriptions;
+        if (descriptions == null || !descriptions.locale.equals(locale)) {
+            descriptions = new Descriptions(locale);
+            sDescriptions = descriptions;
+        }
+
+        int index = weatherId - MIN_ID;
+        String description = descriptions.strings[index];
+        if (description == null) {
+            int descriptionId = sDescriptionIds[index];
+            description = descriptionId != 0 ? context.getString(descriptionId)
+                    : context.getString(R.string.condition_unknown, weatherId);
+            descriptions.strings[index] = description;
+        }
+        return description;
+    }
+}
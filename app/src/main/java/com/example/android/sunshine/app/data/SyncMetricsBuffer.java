@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncMetricsEntry;
+
+/**
+ * The last few rows of sync metrics that {@link WeatherProvider} serves, in a fixed size ring
+ * buffer.  Once it's full, every new row overwrites the oldest.
+ */
+class SyncMetricsBuffer {
+    private final ContentValues[] mRows;
+    // The id the next row gets.  Ids start at 1 and are never reused.
+    private long mNextId = 1;
+    // The id of the oldest row still held
+    private long mOldestId = 1;
+
+    SyncMetricsBuffer(int capacity) {
+        mRows = new ContentValues[capacity];
+    }
+
+    /**
+     * Adds a row, dropping the oldest one if the buffer is full.
+     *
+     * @return the id of the new row
+     */
+    synchronized long add(ContentValues values) {
+        long id = mNextId++;
+        ContentValues row = new ContentValues(values);
+        row.put(SyncMetricsEntry._ID, id);
+        mRows[(int) (id % mRows.length)] = row;
+        mOldestId = Math.max(mOldestId, mNextId - mRows.length);
+        return id;
+    }
+
+    /**
+     * Returns the rows, oldest first.
+     *
+     * @param projection the columns to return, or null for {@link SyncMetricsEntry#COLUMNS}
+     */
+    synchronized Cursor query(String[] projection) {
+        if (projection == null) {
+            projection = SyncMetricsEntry.COLUMNS;
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, (int) (mNextId - mOldestId));
+        for (long id = mOldestId; id < mNextId; id++) {
+            ContentValues row = mRows[(int) (id % mRows.length)];
+            Object[] values = new Object[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                values[i] = row.get(projection[i]);
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    /**
+     * Drops every row.
+     *
+     * @return how many rows were dropped
+     */
+    synchronized int clear() {
+        int count = (int) (mNextId - mOldestId);
+        for (int i = 0; i < mRows.length; i++) {
+            mRows[i] = null;
+        }
+        mOldestId = mNextId;
+        return count;
+    }
+}
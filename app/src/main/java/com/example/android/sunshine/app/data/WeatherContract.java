@@ -43,6 +43,14 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_TODAY = "today";
+    public static final String PATH_SYNC_METRICS = "sync_metrics";
+
+    // Method for ContentResolver.call() that returns how often the provider's query cache has
+    // answered a query, and how often it had to go to the database, under these keys
+    public static final String METHOD_GET_QUERY_CACHE_STATS = "get_query_cache_stats";
+    public static final String KEY_QUERY_CACHE_HITS = "query_cache_hits";
+    public static final String KEY_QUERY_CACHE_MISSES = "query_cache_misses";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -165,4 +173,119 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the today table.  Each row is a snapshot
+       of the current day's weather for one location, written at the end of every sync and
+       already formatted for display, so the widgets, the notification, Muzei and the watch can
+       read it without each querying and formatting the forecast themselves.  It's still
+       yesterday's until the first sync after midnight, so they read it through
+       SunshineSyncAdapter.queryToday, which rebuilds it first when it's out of date. */
+    public static final class TodayEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_TODAY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_TODAY;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_TODAY;
+
+        public static final String TABLE_NAME = "today";
+
+        // The location setting the snapshot is for.  There's at most one snapshot per location.
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // Human readable location string, as stored in the location table
+        public static final String COLUMN_CITY_NAME = "city_name";
+
+        // The day the snapshot describes, stored as long in milliseconds since the epoch
+        public static final String COLUMN_DATE = "date";
+
+        // Weather id as returned by API, to identify the icon to be used
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        // Short description of the weather, as provided by API
+        public static final String COLUMN_SHORT_DESC = "short_desc";
+
+        // High and low temperatures, formatted in the units chosen in the settings
+        public static final String COLUMN_HIGH = "high";
+        public static final String COLUMN_LOW = "low";
+
+        // URL of the art for the weather, from the art pack chosen in the settings
+        public static final String COLUMN_ART_URL = "art_url";
+
+        public static Uri buildTodayUri(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /* Inner class that defines the columns of the sync metrics, a debugging aid.  Each row
+       holds how long the stages of one sync took.  They aren't stored in the database: the
+       provider keeps the last few syncs in memory, oldest first, and forgets them when the
+       process dies. */
+    public static final class SyncMetricsEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_METRICS).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_METRICS;
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_METRICS;
+
+        // When the sync started, in milliseconds since the epoch
+        public static final String COLUMN_START_TIME = "start_time";
+
+        // How many locations were fetched
+        public static final String COLUMN_LOCATIONS = "locations";
+
+        // The fetch stages, added up over every location.  Connecting includes the DNS lookup.
+        // Downloading runs from the request being sent to the last byte being read, which
+        // includes the parse, since the response is parsed as it streams in; the parse time
+        // is the CPU time the parse took.
+        public static final String COLUMN_CONNECT_MILLIS = "connect_ms";
+        public static final String COLUMN_DOWNLOAD_BYTES = "download_bytes";
+        public static final String COLUMN_DOWNLOAD_MILLIS = "download_ms";
+        public static final String COLUMN_PARSE_MILLIS = "parse_ms";
+
+        // The storage stages.  The locations, the days and the deletion of past days are
+        // stored in one batch.
+        public static final String COLUMN_STORE_MILLIS = "store_ms";
+        public static final String COLUMN_TODAY_SNAPSHOT_MILLIS = "today_snapshot_ms";
+
+        // Everything the sync lets know about the new weather
+        public static final String COLUMN_UPDATE_WIDGETS_MILLIS = "update_widgets_ms";
+        public static final String COLUMN_UPDATE_MUZEI_MILLIS = "update_muzei_ms";
+        public static final String COLUMN_UPDATE_WEARABLE_MILLIS = "update_wearable_ms";
+        public static final String COLUMN_NOTIFY_WEATHER_MILLIS = "notify_weather_ms";
+
+        // The whole sync, start to finish
+        public static final String COLUMN_TOTAL_MILLIS = "total_ms";
+
+        // Every column, in the order they're returned when no projection is given
+        public static final String[] COLUMNS = new String[] {
+                _ID,
+                COLUMN_START_TIME,
+                COLUMN_LOCATIONS,
+                COLUMN_CONNECT_MILLIS,
+                COLUMN_DOWNLOAD_BYTES,
+                COLUMN_DOWNLOAD_MILLIS,
+                COLUMN_PARSE_MILLIS,
+                COLUMN_STORE_MILLIS,
+                COLUMN_TODAY_SNAPSHOT_MILLIS,
+                COLUMN_UPDATE_WIDGETS_MILLIS,
+                COLUMN_UPDATE_MUZEI_MILLIS,
+                COLUMN_UPDATE_WEARABLE_MILLIS,
+                COLUMN_NOTIFY_WEATHER_MILLIS,
+                COLUMN_TOTAL_MILLIS
+        };
+
+        public static Uri buildSyncMetricsUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id);
+        }
+    }
 }
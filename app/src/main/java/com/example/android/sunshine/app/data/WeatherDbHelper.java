@@ -15,25 +15,84 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.TodayEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version, change
+    // onCreate to build the new schema, and add a step to migrate() that turns the previous
+    // version into it without losing the stored forecast.
+    static final int DATABASE_VERSION = 4;
+
+    // The oldest version migrate() knows how to upgrade.  Anything older is rebuilt.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Every weather query the provider runs finds the location by its setting, through the
+    // UNIQUE index on location_setting, then its days by location and date.  The UNIQUE
+    // (date, location_id) constraint's index has the columns the wrong way round for that, so
+    // without this one each lookup would walk every stored day.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ");";
+
+    // Create a table to hold the today snapshots, one per location setting.  They're looked up
+    // by the setting alone, through its UNIQUE index.
+    private static final String SQL_CREATE_TODAY_TABLE = "CREATE TABLE " + TodayEntry.TABLE_NAME + " (" +
+            TodayEntry._ID + " INTEGER PRIMARY KEY," +
+            TodayEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            TodayEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            TodayEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            TodayEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+            TodayEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            TodayEntry.COLUMN_HIGH + " TEXT NOT NULL, " +
+            TodayEntry.COLUMN_LOW + " TEXT NOT NULL, " +
+            TodayEntry.COLUMN_ART_URL + " TEXT " +
+            " );";
+
+    // Pages of cache for the connection that writes.  At the default 4 KiB page size that's
+    // enough for a sync to keep every index and a few weeks of weather for several locations in
+    // memory.  The connections that only read keep SQLite's default.
+    private static final int CACHE_SIZE_PAGES = 512;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            // Let the loaders, widgets, Muzei and the notification keep reading while a sync
+            // is writing, instead of waiting for its transaction to finish.  Before Jelly Bean
+            // SQLiteDatabase serializes readers behind the writer anyway, so there's nothing
+            // to gain there.
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase sqLiteDatabase) {
+        // Only called on Jelly Bean and later, which is also when the write-ahead log is on.
+        // With it, NORMAL only syncs at checkpoints: a crash can't corrupt the database, at
+        // worst it loses the last sync, which is only a cache of online data anyway.
+        sqLiteDatabase.execSQL("PRAGMA synchronous = NORMAL");
+        // onConfigure runs on the primary connection only, which is the one every write goes
+        // through.  The pool opens its read-only connections without it.
+        sqLiteDatabase.execSQL("PRAGMA cache_size = " + CACHE_SIZE_PAGES);
     }
 
     @Override
@@ -81,18 +140,53 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_TODAY_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // Version 1 databases are only a cache for online data, so their upgrade policy is
+            // to simply to discard the data and start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + TodayEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        // Step through every version in between, so the stored forecast survives the update
+        // and the first launch afterwards can show it without waiting for a sync.
+        // SQLiteOpenHelper already runs onUpgrade in a transaction; each step gets its own
+        // nested one so that a step is either applied completely or not at all.
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            Log.d(LOG_TAG, "Migrating the database to version " + version);
+            sqLiteDatabase.beginTransaction();
+            try {
+                migrate(sqLiteDatabase, version);
+                sqLiteDatabase.setTransactionSuccessful();
+            } finally {
+                sqLiteDatabase.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Upgrades a database at {@code toVersion - 1} to {@code toVersion}.
+     */
+    private void migrate(SQLiteDatabase sqLiteDatabase, int toVersion) {
+        switch (toVersion) {
+            case 3:
+                // Version 3 added the location and date index
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            case 4:
+                // Version 4 added the today snapshots.  The next sync fills them in.
+                sqLiteDatabase.execSQL(SQL_CREATE_TODAY_TABLE);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + toVersion);
+        }
     }
 }
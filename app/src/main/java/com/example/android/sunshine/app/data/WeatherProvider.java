@@ -17,12 +17,25 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
@@ -30,10 +43,24 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // Enough rows for the forecast list and the day details of a few locations
+    private static final int QUERY_CACHE_MAX_ROWS = 256;
+    private final WeatherQueryCache mQueryCache = new WeatherQueryCache(QUERY_CACHE_MAX_ROWS);
+
+    // How many syncs' metrics to keep
+    static final int SYNC_METRICS_CAPACITY = 32;
+    private final SyncMetricsBuffer mSyncMetrics = new SyncMetricsBuffer(SYNC_METRICS_CAPACITY);
+
+    // The batch being applied on the calling thread, if any
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int TODAY = 400;
+    static final int TODAY_WITH_LOCATION = 401;
+    static final int SYNC_METRICS = 500;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -52,22 +79,69 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //today.location_setting = ?
+    static final String sTodayLocationSettingSelection =
+            WeatherContract.TodayEntry.TABLE_NAME +
+                    "." + WeatherContract.TodayEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    //weather.location_id = ? AND date = ?
+    static final String sWeatherLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    // Every weather column but _id, in the order bindWeather binds them
+    private static final String[] sBulkWeatherColumns = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    //INSERT OR REPLACE INTO weather (location_id, date, ...) VALUES (?, ?, ...)
+    private static final String sInsertWeatherSql =
+            "INSERT OR REPLACE INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    TextUtils.join(", ", sBulkWeatherColumns) + ") VALUES (" +
+                    TextUtils.join(", ", Collections.nCopies(sBulkWeatherColumns.length, "?")) +
+                    ")";
+
+    //SELECT COUNT(*) FROM weather WHERE location_id = ? AND date = ? AND ...
+    // The location and date come first, so this is a lookup in the location and date index
+    private static final String sCountMatchingWeatherSql =
+            "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " WHERE " +
+                    TextUtils.join(" = ? AND ", sBulkWeatherColumns) + " = ?";
+
+    /**
+     * Returns the SQL the provider runs for a weather by location setting query, so that tests
+     * can check its query plan.
+     */
+    @SuppressWarnings("deprecation")
+    static String buildWeatherByLocationSettingQuery(String selection, String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.buildQuery(
+                null, selection, null, null, null, sortOrder, null);
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -108,6 +182,31 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Answers the weather by location queries, which are the ones every screen, widget and
+     * the sync keep running, from {@link #mQueryCache} when it can.
+     */
+    private Cursor getCachedWeatherByLocationSetting(
+            Uri uri, String[] projection, String sortOrder) {
+        int match = sUriMatcher.match(uri);
+        long date = match == WEATHER_WITH_LOCATION_AND_DATE
+                ? WeatherContract.WeatherEntry.getDateFromUri(uri)
+                : WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        String key = match + "|" +
+                Uri.encode(WeatherContract.WeatherEntry.getLocationSettingFromUri(uri)) + "|" +
+                date + "|" + Arrays.toString(projection) + "|" + sortOrder;
+
+        Cursor cursor = mQueryCache.get(key);
+        if (cursor != null) {
+            return cursor;
+        }
+        long generation = mQueryCache.getGeneration();
+        cursor = match == WEATHER_WITH_LOCATION_AND_DATE
+                ? getWeatherByLocationSettingAndDate(uri, projection, sortOrder)
+                : getWeatherByLocationSetting(uri, projection, sortOrder);
+        return mQueryCache.put(key, generation, cursor);
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +229,11 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_TODAY, TODAY);
+        matcher.addURI(authority, WeatherContract.PATH_TODAY + "/*", TODAY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_METRICS, SYNC_METRICS);
         return matcher;
     }
 
@@ -164,6 +268,12 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case TODAY:
+                return WeatherContract.TodayEntry.CONTENT_TYPE;
+            case TODAY_WITH_LOCATION:
+                return WeatherContract.TodayEntry.CONTENT_ITEM_TYPE;
+            case SYNC_METRICS:
+                return WeatherContract.SyncMetricsEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -178,13 +288,9 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
-            }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                retCursor = getCachedWeatherByLocationSetting(uri, projection, sortOrder);
                 break;
             }
             // "weather"
@@ -213,6 +319,37 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "today/*"
+            case TODAY_WITH_LOCATION: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.TodayEntry.TABLE_NAME,
+                        projection,
+                        sTodayLocationSettingSelection,
+                        new String[]{WeatherContract.TodayEntry.getLocationSettingFromUri(uri)},
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "today"
+            case TODAY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.TodayEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "sync_metrics"
+            case SYNC_METRICS: {
+                retCursor = mSyncMetrics.query(projection);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -232,8 +369,13 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                Batch batch = mBatch.get();
+                long _id = batch != null
+                        ? batch.getWeatherWriter().write(values) : writeWeatherRow(db, values);
+                if ( _id == 0 ) {
+                    // The same day is already stored with the same values, so nothing changed
+                    return WeatherContract.WeatherEntry.CONTENT_URI;
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -241,6 +383,17 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                // A location setting is only stored once, so inserting one that's already
+                // there gives back the stored row.  That way a batch can insert a forecast's
+                // location and refer back to its id whether or not it's new.
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                if (locationSetting != null) {
+                    long storedId = getLocationId(db, locationSetting);
+                    if (storedId != -1) {
+                        return WeatherContract.LocationEntry.buildLocationUri(storedId);
+                    }
+                }
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -248,10 +401,28 @@ public class WeatherProvider extends ContentProvider {
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case TODAY: {
+                // A location only ever has the one snapshot, so a new one replaces the old
+                long _id = db.insertWithOnConflict(WeatherContract.TodayEntry.TABLE_NAME, null,
+                        values, SQLiteDatabase.CONFLICT_REPLACE);
+                if ( _id > 0 )
+                    returnUri = WeatherContract.TodayEntry.buildTodayUri(values.getAsString(
+                            WeatherContract.TodayEntry.COLUMN_LOCATION_SETTING));
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
+            case SYNC_METRICS: {
+                // Kept in memory, so there's no cached weather to throw away
+                returnUri = WeatherContract.SyncMetricsEntry.buildSyncMetricsUri(
+                        mSyncMetrics.add(values));
+                getContext().getContentResolver().notifyChange(uri, null);
+                return returnUri;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        onChange(uri);
         return returnUri;
     }
 
@@ -271,17 +442,58 @@ public class WeatherProvider extends ContentProvider {
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case TODAY:
+                rowsDeleted = db.delete(
+                        WeatherContract.TodayEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case SYNC_METRICS:
+                // There's no selecting from the metrics, they can only all be dropped
+                rowsDeleted = mSyncMetrics.clear();
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            onChange(uri);
         }
         return rowsDeleted;
     }
 
-    private void normalizeDate(ContentValues values) {
+    /**
+     * Throws away the cached queries and tells observers that {@code uri} changed, or, while
+     * a batch is being applied on this thread, leaves that until the batch commits.
+     */
+    private void onChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.mChangedUris.add(uri);
+            return;
+        }
+        mQueryCache.invalidate();
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Returns the id of the location stored for {@code locationSetting}, or -1 if there isn't
+     * one.
+     */
+    private static long getLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                sLocationSettingSelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
             long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
@@ -289,6 +501,56 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    /**
+     * Returns true if the weather table already has a row for the same location and day as
+     * {@code values}, holding exactly the same values.
+     */
+    private static boolean matchesStoredWeather(SQLiteDatabase db, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (locationId == null || date == null) {
+            return false;
+        }
+
+        Set<Map.Entry<String, Object>> valueSet = values.valueSet();
+        String[] columns = new String[valueSet.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : valueSet) {
+            columns[i++] = entry.getKey();
+        }
+
+        Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                columns,
+                sWeatherLocationIdAndDaySelection,
+                new String[]{Long.toString(locationId), Long.toString(date)},
+                null,
+                null,
+                null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            i = 0;
+            for (Map.Entry<String, Object> entry : valueSet) {
+                Object value = entry.getValue();
+                int index = i++;
+                if (value == null) {
+                    if (!cursor.isNull(index)) return false;
+                } else if (value instanceof Number) {
+                    if (cursor.isNull(index)
+                            || cursor.getDouble(index) != ((Number) value).doubleValue()) {
+                        return false;
+                    }
+                } else if (!value.toString().equals(cursor.getString(index))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -310,7 +572,7 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            onChange(uri);
         }
         return rowsUpdated;
     }
@@ -322,26 +584,212 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER:
                 db.beginTransaction();
-                int returnCount = 0;
+                int returnCount;
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
+                    returnCount = bulkInsertWeather(db, values);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                // Only tell observers about it if something was actually written
+                if (returnCount > 0) {
+                    onChange(uri);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in a single transaction, so readers never see some of them without
+     * the rest, and tells observers about each URI that changed once, after it commits.
+     *
+     * Weather inserts in the batch share one {@link WeatherWriter}, so they skip unchanged days
+     * and use compiled statements just like {@link #bulkInsert}.  Inserting a location that's
+     * already stored gives back its URI, so the weather inserts that follow it can take its id
+     * through a back-reference either way.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Batch batch = new Batch(db);
+        ContentProviderResult[] results;
+        mBatch.set(batch);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            batch.close();
+            db.endTransaction();
+            mBatch.remove();
+        }
+        if (!batch.mChangedUris.isEmpty()) {
+            mQueryCache.invalidate();
+            for (Uri uri : batch.mChangedUris) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Inserts weather rows, skipping the days that are already stored with the same values.
+     * Must be called inside a transaction.
+     *
+     * @return the number of rows written
+     */
+    static int bulkInsertWeather(SQLiteDatabase db, ContentValues[] values) {
+        int returnCount = 0;
+        WeatherWriter writer = new WeatherWriter(db);
+        try {
+            for (ContentValues value : values) {
+                if (writer.write(value) > 0) {
+                    returnCount++;
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return returnCount;
+    }
+
+    /**
+     * Inserts one weather row through ContentValues, unless the same day is already stored with
+     * the same values.
+     *
+     * @return true if the row was written
+     */
+    static boolean insertWeatherRow(SQLiteDatabase db, ContentValues value) {
+        return writeWeatherRow(db, value) > 0;
+    }
+
+    /**
+     * Like {@link #insertWeatherRow}, but returns the id of the new row, 0 if the same day was
+     * already stored with the same values, or -1 if it couldn't be written.
+     */
+    private static long writeWeatherRow(SQLiteDatabase db, ContentValues value) {
+        normalizeDate(value);
+        if (matchesStoredWeather(db, value)) {
+            return 0;
+        }
+        return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+    }
+
+    /**
+     * Writes weather rows, skipping the days that are already stored with the same values.
+     *
+     * Rows that have every weather column, which is every row the sync adapter writes, go
+     * through two statements compiled once for the writer with their values bound directly,
+     * instead of having SQL built and ContentValues unpacked again for every row.  Anything
+     * else goes through {@link #writeWeatherRow}.
+     */
+    static class WeatherWriter {
+        private final SQLiteDatabase mDb;
+        private final SQLiteStatement mCountMatching;
+        private final SQLiteStatement mInsert;
+
+        WeatherWriter(SQLiteDatabase db) {
+            mDb = db;
+            mCountMatching = db.compileStatement(sCountMatchingWeatherSql);
+            mInsert = db.compileStatement(sInsertWeatherSql);
+        }
+
+        /**
+         * @return the id of the new row, 0 if the same day was already stored with the same
+         * values, or -1 if it couldn't be written
+         */
+        long write(ContentValues value) {
+            if (!hasEveryWeatherColumn(value)) {
+                return writeWeatherRow(mDb, value);
+            }
+            normalizeDate(value);
+            // Rewriting a day that hasn't changed would only cost a write and wake
+            // up everything observing the weather, so leave it alone.
+            bindWeather(mCountMatching, value);
+            if (mCountMatching.simpleQueryForLong() > 0) {
+                return 0;
+            }
+            bindWeather(mInsert, value);
+            return mInsert.executeInsert();
+        }
+
+        void close() {
+            mCountMatching.close();
+            mInsert.close();
+        }
+    }
+
+    /**
+     * What {@link #applyBatch} keeps while it runs on a thread: the URIs to notify once it
+     * commits, and the weather writer its weather inserts share.
+     */
+    private static class Batch {
+        final Set<Uri> mChangedUris = new LinkedHashSet<Uri>();
+        private final SQLiteDatabase mDb;
+        private WeatherWriter mWeatherWriter;
+
+        Batch(SQLiteDatabase db) {
+            mDb = db;
+        }
+
+        WeatherWriter getWeatherWriter() {
+            if (mWeatherWriter == null) {
+                mWeatherWriter = new WeatherWriter(mDb);
+            }
+            return mWeatherWriter;
+        }
+
+        void close() {
+            if (mWeatherWriter != null) {
+                mWeatherWriter.close();
+            }
+        }
+    }
+
+    private static boolean hasEveryWeatherColumn(ContentValues value) {
+        if (value.size() != sBulkWeatherColumns.length) {
+            return false;
+        }
+        for (String column : sBulkWeatherColumns) {
+            if (value.get(column) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Binds a row's values to a statement whose parameters are {@link #sBulkWeatherColumns}, in
+     * order.
+     */
+    private static void bindWeather(SQLiteStatement statement, ContentValues value) {
+        statement.bindLong(1, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+        statement.bindLong(2, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        statement.bindString(3, value.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        statement.bindLong(4, value.getAsLong(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        statement.bindDouble(5, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        statement.bindDouble(6, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        statement.bindDouble(7, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+        statement.bindDouble(8, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE));
+        statement.bindDouble(9, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED));
+        statement.bindDouble(10, value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES));
+    }
+
+    @Override
+    @TargetApi(11)
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_GET_QUERY_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putInt(WeatherContract.KEY_QUERY_CACHE_HITS, mQueryCache.hitCount());
+            stats.putInt(WeatherContract.KEY_QUERY_CACHE_MISSES, mQueryCache.missCount());
+            return stats;
+        }
+        return super.call(method, arg, extras);
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
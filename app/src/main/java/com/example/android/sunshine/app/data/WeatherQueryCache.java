@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+/**
+ * A bounded in-memory cache of query results for {@link WeatherProvider}.
+ *
+ * Results are copied out of SQLite once and every hit gets its own {@link MatrixCursor} over
+ * the copy, since callers move and close the cursors they're given.  The cache is bounded by
+ * the total number of rows it holds, and emptied whenever the provider writes.
+ *
+ * A query can race a write: it may read the database before the write commits and only
+ * finish after the write has emptied the cache.  To keep such a result from being cached,
+ * every write bumps a generation, and a result is only kept if the generation hasn't changed
+ * since its query started.
+ */
+class WeatherQueryCache {
+    private final Object mLock = new Object();
+    private final LruCache<String, Result> mCache;
+    private long mGeneration;
+
+    WeatherQueryCache(int maxRows) {
+        mCache = new LruCache<String, Result>(maxRows) {
+            @Override
+            protected int sizeOf(String key, Result result) {
+                return Math.max(1, result.rows.length);
+            }
+        };
+    }
+
+    /**
+     * Returns a new cursor over the cached result for {@code key}, or null if there isn't one.
+     */
+    Cursor get(String key) {
+        Result result = mCache.get(key);
+        return result != null ? result.newCursor() : null;
+    }
+
+    /**
+     * Returns the current generation, to be passed to {@link #put} once the query is done.
+     */
+    long getGeneration() {
+        synchronized (mLock) {
+            return mGeneration;
+        }
+    }
+
+    /**
+     * Copies {@code cursor} into the cache, unless the database was written since
+     * {@code generation} was read, then closes it.
+     *
+     * @return a cursor over the copy, in place of {@code cursor}
+     */
+    Cursor put(String key, long generation, Cursor cursor) {
+        Result result;
+        try {
+            result = Result.copyOf(cursor);
+        } finally {
+            cursor.close();
+        }
+        synchronized (mLock) {
+            if (generation == mGeneration) {
+                mCache.put(key, result);
+            }
+        }
+        return result.newCursor();
+    }
+
+    /**
+     * Empties the cache.  Must be called after every write that has been committed.
+     */
+    void invalidate() {
+        synchronized (mLock) {
+            mGeneration++;
+            mCache.evictAll();
+        }
+    }
+
+    int hitCount() {
+        return mCache.hitCount();
+    }
+
+    int missCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * The columns and rows of one query result.
+     */
+    private static class Result {
+        final String[] columnNames;
+        final Object[][] rows;
+
+        private Result(String[] columnNames, Object[][] rows) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+        }
+
+        static Result copyOf(Cursor cursor) {
+            String[] columnNames = cursor.getColumnNames();
+            Object[][] rows = new Object[cursor.getCount()][];
+            cursor.moveToPosition(-1);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                Object[] row = new Object[columnNames.length];
+                for (int column = 0; column < columnNames.length; column++) {
+                    row[column] = getValue(cursor, column);
+                }
+                rows[i] = row;
+            }
+            return new Result(columnNames, rows);
+        }
+
+        private static Object getValue(Cursor cursor, int column) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                return getTypedValue(cursor, column);
+            }
+            // MatrixCursor parses strings back into whatever type is asked for
+            return cursor.getString(column);
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        private static Object getTypedValue(Cursor cursor, int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return cursor.getLong(column);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return cursor.getDouble(column);
+                case Cursor.FIELD_TYPE_BLOB:
+                    return cursor.getBlob(column);
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                default:
+                    return cursor.getString(column);
+            }
+        }
+
+        Cursor newCursor() {
+            MatrixCursor cursor = new MatrixCursor(columnNames, rows.length);
+            for (Object[] row : rows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.v4.content.FileProvider;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps a copy of each weather wallpaper on disk, scaled down to the screen and saved as a JPEG,
+ * and hands them out as content URIs from the app's FileProvider.
+ *
+ * The images behind {@link com.example.android.sunshine.app.Utility#getImageUrlForWeatherCondition}
+ * are full size photos, several megabytes each.  Publishing their URLs made Muzei download and
+ * decode one of them every time the weather was synced, even when it was the one already
+ * showing.  Here each one is only downloaded the first time it's needed, and what Muzei reads
+ * is about the size of the screen.
+ *
+ * Fetching blocks, so it must not be done on the main thread.
+ */
+final class WeatherArtworkStore {
+    private static final String LOG_TAG = WeatherArtworkStore.class.getSimpleName();
+
+    // Where the artwork is kept under the files directory, see res/xml/muzei_artwork_paths.xml
+    static final String DIRECTORY = "muzei";
+
+    private static final int JPEG_QUALITY = 90;
+
+    private final Context mContext;
+    private final File mDirectory;
+    // The size of the screen held upright, which the artwork is kept at least as big as
+    private final int mWidth;
+    private final int mHeight;
+
+    WeatherArtworkStore(Context context) {
+        mContext = context.getApplicationContext();
+        mDirectory = new File(mContext.getFilesDir(), DIRECTORY);
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        mWidth = Math.min(metrics.widthPixels, metrics.heightPixels);
+        mHeight = Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    /**
+     * Returns what identifies the artwork for {@code imageUrl} at this screen's size.  It's the
+     * same for every weather condition sharing an image, and also names the artwork's file.
+     */
+    String getToken(String imageUrl) {
+        return "weather_" + Integer.toHexString(imageUrl.hashCode())
+                + "_" + mWidth + "x" + mHeight;
+    }
+
+    File getFile(String imageUrl) {
+        return new File(mDirectory, getToken(imageUrl) + ".jpg");
+    }
+
+    /**
+     * Returns a content URI for the artwork of {@code imageUrl}, fetching and transcoding it
+     * first if it isn't stored yet, or null if that failed.
+     */
+    Uri getArtworkUri(String imageUrl) {
+        File file = getFile(imageUrl);
+        if (!file.exists() && !fetch(imageUrl, file)) {
+            return null;
+        }
+        return FileProvider.getUriForFile(mContext,
+                mContext.getString(R.string.muzei_artwork_authority), file);
+    }
+
+    private boolean fetch(String imageUrl, File file) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + mDirectory);
+            return false;
+        }
+
+        // Without a transformation Glide only samples the image down by powers of two while
+        // it's at least the requested size, so the wallpaper is never blurrier than the screen.
+        // It's kept here rather than in Glide's disk cache, which is sized for the weather art.
+        FutureTarget<Bitmap> target = Glide.with(mContext)
+                .load(imageUrl)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .into(mWidth, mHeight);
+        // Written next to the artwork and renamed once complete, so Muzei never reads half of it
+        File partial = new File(mDirectory, file.getName() + ".partial");
+        try {
+            Bitmap bitmap = target.get();
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(partial));
+            try {
+                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                    throw new IOException("Couldn't compress the artwork");
+                }
+            } finally {
+                out.close();
+            }
+            if (!partial.renameTo(file)) {
+                throw new IOException("Couldn't rename " + partial + " to " + file);
+            }
+            return true;
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Log.e(LOG_TAG, "Error storing the artwork from " + imageUrl, e);
+            partial.delete();
+            return false;
+        } finally {
+            // Hands the bitmap, the size of the screen, back to Glide's pool.  Clearing a
+            // FutureTarget posts to the main thread, so this is safe to call here.
+            Glide.clear(target);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.example.android.sunshine.app.muzei;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
@@ -31,13 +32,16 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final String[] FORECAST_COLUMNS = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+            WeatherContract.TodayEntry.COLUMN_WEATHER_ID,
+            WeatherContract.TodayEntry.COLUMN_SHORT_DESC
     };
     // these indices must match the projection
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
 
+    // Muzei reads the artwork from our FileProvider, which only serves apps granted access
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -55,25 +59,53 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+        Cursor cursor = SunshineSyncAdapter.queryToday(this, location, FORECAST_COLUMNS);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                publishWeatherArtwork(cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getString(INDEX_SHORT_DESC), location);
             }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void publishWeatherArtwork(int weatherId, String desc, String location) {
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl == null) {
+            return;
+        }
+
+        // Most syncs don't change the weather enough to change the wallpaper, and publishing
+        // the same one again would still have Muzei load it and fade to it
+        WeatherArtworkStore store = new WeatherArtworkStore(this);
+        String token = store.getToken(imageUrl);
+        Artwork current = getCurrentArtwork();
+        if (current != null && token.equals(current.getToken())
+                && TextUtils.equals(desc, current.getTitle())
+                && TextUtils.equals(location, current.getByline())) {
+            return;
+        }
+
+        Uri imageUri = store.getArtworkUri(imageUrl);
+        if (imageUri != null) {
+            grantUriPermission(MUZEI_PACKAGE, imageUri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } else {
+            // Muzei can still fetch the full image itself.  Without a token the next update
+            // tries storing it again.
+            imageUri = Uri.parse(imageUrl);
+            token = null;
         }
-        cursor.close();
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .token(token)
+                .title(desc)
+                .byline(location)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
     }
 }
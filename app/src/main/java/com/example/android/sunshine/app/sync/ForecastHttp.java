@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.http.HttpResponseCache;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP helpers for fetching the forecast as cheaply as possible.
+ *
+ * On Ice Cream Sandwich and later an {@link HttpResponseCache} is installed, which makes the
+ * request conditional for us and answers it from disk when the server says nothing changed.  On
+ * older devices we make the request conditional ourselves.
+ *
+ * Either way we keep the ETag and Last-Modified validators of the last response whose forecast
+ * was stored, and only save them once it has been.  The response cache commits a response as
+ * soon as its body has been read, before the caller gets to store it, so a revalidated cache
+ * entry only means the stored forecast is current when its validators are the ones we saved.
+ * When they are, or when the server answers a 304 to our own validators, the caller can skip
+ * parsing and writing the forecast.  Anything else, including a response the cache serves
+ * without asking the server, is parsed.
+ *
+ * Responses are requested gzipped.  Because we set Accept-Encoding ourselves, HttpURLConnection
+ * won't decompress for us, which means we can count the bytes that actually came over the wire.
+ */
+class ForecastHttp {
+    private static final String LOG_TAG = ForecastHttp.class.getSimpleName();
+
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_SIZE = 1024 * 1024;  // 1 MiB
+
+    // Header Android's HttpURLConnection adds to say where a response came from, for example
+    // "CACHE 200", "CONDITIONAL_CACHE 304" or "NETWORK 200"
+    private static final String HEADER_RESPONSE_SOURCE = "X-Android-Response-Source";
+    private static final String SOURCE_CONDITIONAL_CACHE_NOT_MODIFIED = "CONDITIONAL_CACHE 304";
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String ENCODING_GZIP = "gzip";
+
+    // Validators are kept per URL, since the URL includes the location
+    private static final String PREF_ETAG_PREFIX = "forecast_etag:";
+    private static final String PREF_LAST_MODIFIED_PREFIX = "forecast_last_modified:";
+
+    private ForecastHttp() {
+    }
+
+    /**
+     * Installs the process-wide response cache, if the platform has one and it isn't already
+     * installed.
+     */
+    static void installResponseCache(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            installResponseCacheV14(context);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void installResponseCacheV14(Context context) {
+        if (HttpResponseCache.getInstalled() != null) {
+            return;
+        }
+        try {
+            HttpResponseCache.install(new File(context.getCacheDir(), HTTP_CACHE_DIR),
+                    HTTP_CACHE_SIZE);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to install the HTTP response cache", e);
+        }
+    }
+
+    /**
+     * Writes anything the response cache still has buffered to disk.
+     */
+    static void flushResponseCache() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            flushResponseCacheV14();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static void flushResponseCacheV14() {
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    private static boolean isResponseCacheInstalled() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH
+                && isResponseCacheInstalledV14();
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static boolean isResponseCacheInstalledV14() {
+        return HttpResponseCache.getInstalled() != null;
+    }
+
+    /**
+     * Sets the request headers.  Must be called before the connection is connected.
+     */
+    static void prepareRequest(Context context, HttpURLConnection connection) {
+        connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+
+        // The response cache makes the request conditional itself, and it ignores requests
+        // that already carry conditions, so only add our own when there's no cache.
+        if (!isResponseCacheInstalled()) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+            String url = connection.getURL().toString();
+            String etag = prefs.getString(PREF_ETAG_PREFIX + url, null);
+            if (etag != null) {
+                connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+            }
+            long lastModified = prefs.getLong(PREF_LAST_MODIFIED_PREFIX + url, 0);
+            if (lastModified > 0) {
+                connection.setIfModifiedSince(lastModified);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the server told us, directly or through the response cache, that the
+     * forecast hasn't changed since we last stored it.
+     */
+    static boolean isNotModified(Context context, HttpURLConnection connection)
+            throws IOException {
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // Only our own validators make the request conditional without the cache
+            return true;
+        }
+        // The server confirmed the cached response, which may not have been stored yet
+        String source = connection.getHeaderField(HEADER_RESPONSE_SOURCE);
+        return source != null && source.startsWith(SOURCE_CONDITIONAL_CACHE_NOT_MODIFIED)
+                && isStored(context, getValidators(connection));
+    }
+
+    /**
+     * Returns true if {@code validators} are the ones saved when their URL's forecast was last
+     * stored.
+     */
+    private static boolean isStored(Context context, Validators validators) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String etag = prefs.getString(PREF_ETAG_PREFIX + validators.url, null);
+        if (etag != null) {
+            return etag.equals(validators.etag);
+        }
+        long lastModified = prefs.getLong(PREF_LAST_MODIFIED_PREFIX + validators.url, 0);
+        return lastModified > 0 && lastModified == validators.lastModified;
+    }
+
+    /**
+     * Returns the response body exactly as it came over the wire, counting the bytes read.
+     */
+    static CountingInputStream openRawStream(HttpURLConnection connection) throws IOException {
+        return new CountingInputStream(connection.getInputStream());
+    }
+
+    /**
+     * Returns the response body, decompressing it if the server sent it gzipped.
+     */
+    static InputStream decode(HttpURLConnection connection, InputStream rawStream)
+            throws IOException {
+        if (ENCODING_GZIP.equalsIgnoreCase(connection.getContentEncoding())) {
+            return new GZIPInputStream(rawStream);
+        }
+        return rawStream;
+    }
+
+    /**
+     * Reads the validators of a response, so they can be saved once the forecast it carried
+     * has been stored, which may be after the connection is closed.
+     */
+    static Validators getValidators(HttpURLConnection connection) {
+        return new Validators(connection.getURL().toString(),
+                connection.getHeaderField(HEADER_ETAG), connection.getLastModified());
+    }
+
+    /**
+     * Remembers the validators of a response we've stored, so the next request for the same
+     * URL can be made conditional, and a cached copy of it recognized as stored.
+     */
+    static void saveValidators(Context context, Validators validators) {
+        String url = validators.url;
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(context).edit();
+        if (validators.etag != null) {
+            editor.putString(PREF_ETAG_PREFIX + url, validators.etag);
+        } else {
+            editor.remove(PREF_ETAG_PREFIX + url);
+        }
+        if (validators.lastModified > 0) {
+            editor.putLong(PREF_LAST_MODIFIED_PREFIX + url, validators.lastModified);
+        } else {
+            editor.remove(PREF_LAST_MODIFIED_PREFIX + url);
+        }
+        editor.commit();
+    }
+
+    /**
+     * Forgets the validators saved for {@code url}, as if its forecast had never been stored.
+     */
+    static void resetValidators(Context context, String url) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .remove(PREF_ETAG_PREFIX + url)
+                .remove(PREF_LAST_MODIFIED_PREFIX + url)
+                .commit();
+    }
+
+    /**
+     * The ETag and Last-Modified of a response, and the URL they belong to.
+     */
+    static class Validators {
+        final String url;
+        final String etag;
+        final long lastModified;
+
+        Validators(String url, String etag, long lastModified) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        /**
+         * Reads whatever is left of the stream.  The response cache only commits an entry once
+         * the body has been read to the end, and the parsers stop as soon as they have what
+         * they need.
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[1024];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // keep reading
+            }
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.os.Build;
+import android.text.format.Time;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.Vector;
+
+/**
+ * Turns an OpenWeatherMap daily forecast response into rows for the weather table.
+ *
+ * There are two ways in.  {@link #parseStream} pulls tokens straight off the network stream, so
+ * the response never exists as a String or as a tree of JSONObjects.  {@link #parseJson} is the
+ * original org.json implementation, which we still need on devices older than Honeycomb where
+ * {@link JsonReader} isn't available.  Both must produce exactly the same rows.
+ *
+ * The rows don't carry a location id, since that isn't known until the city has been looked up
+ * (or inserted) in the location table.
+ */
+class ForecastJsonParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    // The time of each day, in seconds since the epoch.  Only checked on pushed forecasts, see
+    // ForecastPush.isStorableDelta.
+    static final String OWM_DATE = "dt";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * Everything we keep from a forecast response.
+     */
+    static class Forecast {
+        // The "cod" value of the response.  Anything other than HTTP_OK means the rest of the
+        // fields haven't been filled in.
+        int messageCode = HttpURLConnection.HTTP_OK;
+
+        String cityName;
+        double cityLatitude;
+        double cityLongitude;
+
+        // One entry per day, in the order the server sent them (today first).
+        final Vector<ContentValues> weatherValues = new Vector<ContentValues>();
+    }
+
+    private ForecastJsonParser() {
+    }
+
+    /**
+     * Returns the normalized date to use for the given day of the forecast.
+     *
+     * OWM returns daily forecasts based upon the local time of the city that is being asked for,
+     * and the data is sent in-order with the first day always being the current day, so we
+     * number the days from the julian day the forecast starts on.
+     */
+    static long getDateForDay(Time dayTime, int julianStartDay, int day) {
+        // Cheating to convert this to UTC time, which is what we want anyhow
+        return dayTime.setJulianDay(julianStartDay + day);
+    }
+
+    /**
+     * Returns the julian day the forecast starts on: today, by local time.
+     */
+    static int getJulianStartDay() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    }
+
+    /**
+     * Take the String representing the complete forecast in JSON Format and
+     * pull out the data we need.
+     *
+     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
+     * into an Object hierarchy for us.
+     */
+    static Forecast parseJson(String forecastJsonStr, int julianStartDay) throws JSONException {
+        Forecast forecast = new Forecast();
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            forecast.messageCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (forecast.messageCode != HttpURLConnection.HTTP_OK) {
+                return forecast;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            double pressure = dayForecast.getDouble(OWM_PRESSURE);
+            int humidity = dayForecast.getInt(OWM_HUMIDITY);
+            double windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            double windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            // Description is in a child array called "weather", which is 1 element long.
+            // That element also contains a weather code.
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            String description = weatherObject.getString(OWM_DESCRIPTION);
+            int weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            double high = temperatureObject.getDouble(OWM_MAX);
+            double low = temperatureObject.getDouble(OWM_MIN);
+
+            forecast.weatherValues.add(createWeatherValues(
+                    getDateForDay(dayTime, julianStartDay, i), humidity, pressure, windSpeed,
+                    windDirection, high, low, description, weatherId));
+        }
+        return forecast;
+    }
+
+    /**
+     * Pull parser equivalent of {@link #parseJson}.  Each element of the "list" array becomes a
+     * row as soon as it has been read, and fields we don't use are skipped without being
+     * materialized.  The stream is not closed.
+     *
+     * @throws JSONException if the response isn't the JSON we expect
+     * @throws IOException if the stream can't be read, including when it is empty
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static Forecast parseStream(InputStream inputStream, int julianStartDay)
+            throws IOException, JSONException {
+        Forecast forecast = new Forecast();
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        boolean hasCity = false;
+        boolean hasList = false;
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    forecast.messageCode = nextInt(reader);
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                    hasCity = true;
+                } else if (OWM_LIST.equals(name)) {
+                    readList(reader, forecast, julianStartDay);
+                    hasList = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException e) {
+            throw new JSONException(e.getMessage());
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports an unexpected token type this way
+            throw new JSONException(e.getMessage());
+        }
+
+        if (forecast.messageCode != HttpURLConnection.HTTP_OK) {
+            forecast.weatherValues.clear();
+            return forecast;
+        }
+        if (!hasList) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        if (!hasCity) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Forecast forecast)
+            throws IOException, JSONException {
+        boolean hasName = false;
+        boolean hasCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+                hasName = true;
+            } else if (OWM_COORD.equals(name)) {
+                boolean hasLatitude = false;
+                boolean hasLongitude = false;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        forecast.cityLatitude = reader.nextDouble();
+                        hasLatitude = true;
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        forecast.cityLongitude = reader.nextDouble();
+                        hasLongitude = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                requireValue(hasLatitude, OWM_LATITUDE);
+                requireValue(hasLongitude, OWM_LONGITUDE);
+                hasCoord = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        requireValue(hasName, OWM_CITY_NAME);
+        requireValue(hasCoord, OWM_COORD);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readList(JsonReader reader, Forecast forecast, int julianStartDay)
+            throws IOException, JSONException {
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+        int day = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            double pressure = 0;
+            int humidity = 0;
+            double windSpeed = 0;
+            double windDirection = 0;
+            double high = 0;
+            double low = 0;
+            String description = null;
+            int weatherId = 0;
+            // Every one of them is required, as it is by parseJson
+            boolean hasPressure = false;
+            boolean hasHumidity = false;
+            boolean hasWindSpeed = false;
+            boolean hasWindDirection = false;
+            boolean hasTemperature = false;
+            boolean hasWeather = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_PRESSURE.equals(name)) {
+                    pressure = reader.nextDouble();
+                    hasPressure = true;
+                } else if (OWM_HUMIDITY.equals(name)) {
+                    humidity = nextInt(reader);
+                    hasHumidity = true;
+                } else if (OWM_WINDSPEED.equals(name)) {
+                    windSpeed = reader.nextDouble();
+                    hasWindSpeed = true;
+                } else if (OWM_WIND_DIRECTION.equals(name)) {
+                    windDirection = reader.nextDouble();
+                    hasWindDirection = true;
+                } else if (OWM_TEMPERATURE.equals(name)) {
+                    boolean hasHigh = false;
+                    boolean hasLow = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String temperatureName = reader.nextName();
+                        if (OWM_MAX.equals(temperatureName)) {
+                            high = reader.nextDouble();
+                            hasHigh = true;
+                        } else if (OWM_MIN.equals(temperatureName)) {
+                            low = reader.nextDouble();
+                            hasLow = true;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    requireValue(hasHigh, OWM_MAX);
+                    requireValue(hasLow, OWM_MIN);
+                    hasTemperature = true;
+                } else if (OWM_WEATHER.equals(name)) {
+                    // Only the first element of the "weather" array is used
+                    reader.beginArray();
+                    if (!reader.hasNext()) {
+                        throw new JSONException("No value for " + OWM_WEATHER + "[0]");
+                    }
+                    boolean hasDescription = false;
+                    boolean hasWeatherId = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String weatherName = reader.nextName();
+                        if (OWM_DESCRIPTION.equals(weatherName)) {
+                            description = reader.nextString();
+                            hasDescription = true;
+                        } else if (OWM_WEATHER_ID.equals(weatherName)) {
+                            weatherId = nextInt(reader);
+                            hasWeatherId = true;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    requireValue(hasDescription, OWM_DESCRIPTION);
+                    requireValue(hasWeatherId, OWM_WEATHER_ID);
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    hasWeather = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            requireValue(hasPressure, OWM_PRESSURE);
+            requireValue(hasHumidity, OWM_HUMIDITY);
+            requireValue(hasWindSpeed, OWM_WINDSPEED);
+            requireValue(hasWindDirection, OWM_WIND_DIRECTION);
+            requireValue(hasWeather, OWM_WEATHER);
+            requireValue(hasTemperature, OWM_TEMPERATURE);
+
+            forecast.weatherValues.add(createWeatherValues(
+                    getDateForDay(dayTime, julianStartDay, day), humidity, pressure, windSpeed,
+                    windDirection, high, low, description, weatherId));
+            day++;
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Throws the JSONException org.json's getters throw for a missing value, so that a field
+     * parseJson requires is required here as well.
+     */
+    private static void requireValue(boolean hasValue, String name) throws JSONException {
+        if (!hasValue) {
+            throw new JSONException("No value for " + name);
+        }
+    }
+
+    /**
+     * Reads an int the way org.json's getInt does: numbers are truncated, and numeric strings
+     * (OWM sends "cod" as a string) are accepted.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int nextInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            return (int) Double.parseDouble(reader.nextString());
+        }
+        return (int) reader.nextDouble();
+    }
+
+    private static ContentValues createWeatherValues(long dateTime, int humidity,
+                                                     double pressure, double windSpeed,
+                                                     double windDirection, double high,
+                                                     double low, String description,
+                                                     int weatherId) {
+        ContentValues weatherValues = new ContentValues();
+
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        return weatherValues;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Turns a GCM message announcing a new forecast into a sync of just that location.
+ *
+ * The message's data carries the location setting, a version that goes up with every new
+ * forecast for that location, and optionally a delta: the days from today up to the last one
+ * that changed, in the same JSON format as OpenWeatherMap's daily forecast.  Like a fetched
+ * forecast, the delta's days are stored by their position from today, so it must start today
+ * and skip no days, see {@link #isStorableDelta}.  A delta that does is stored without
+ * fetching anything; any other, say one composed before the device's midnight and delivered
+ * after it, is ignored and the location fetched instead.  Versions that are no newer than the
+ * last one applied are ignored, so a message GCM delivers twice doesn't cost a second sync.
+ */
+public class ForecastPush {
+    private static final String LOG_TAG = ForecastPush.class.getSimpleName();
+
+    // The keys of the message's data.  GCM delivers every value as a string.
+    static final String DATA_TYPE = "type";
+    static final String DATA_LOCATION = "location";
+    static final String DATA_VERSION = "version";
+    static final String DATA_DELTA = "delta";
+
+    static final String TYPE_FORECAST = "forecast";
+
+    // The last version applied is kept per location
+    private static final String PREF_VERSION_PREFIX = "push_version:";
+
+    private ForecastPush() {
+    }
+
+    /**
+     * Returns whether a GCM message's data announces a new forecast.
+     */
+    public static boolean isForecastMessage(Bundle data) {
+        return TYPE_FORECAST.equals(data.getString(DATA_TYPE));
+    }
+
+    /**
+     * Requests a sync for the location a forecast message is about, unless it's been applied
+     * already.  Safe to call from a BroadcastReceiver, since the sync runs later on the sync
+     * adapter's thread.
+     */
+    public static void onForecastMessage(Context context, Bundle data) {
+        Bundle extras = buildSyncExtras(context, data);
+        if (extras != null) {
+            SunshineSyncAdapter.requestPushedSync(context, extras);
+        }
+    }
+
+    /**
+     * Returns the sync extras for a forecast message, or null if the message is malformed or
+     * no newer than what's stored.
+     */
+    static Bundle buildSyncExtras(Context context, Bundle data) {
+        String location = data.getString(DATA_LOCATION);
+        if (TextUtils.isEmpty(location)) {
+            Log.w(LOG_TAG, "Forecast message without a location");
+            return null;
+        }
+        long version;
+        try {
+            version = Long.parseLong(data.getString(DATA_VERSION));
+        } catch (NumberFormatException e) {
+            Log.w(LOG_TAG, "Forecast message with a bad version: " + data.getString(DATA_VERSION));
+            return null;
+        }
+        if (version <= getAppliedVersion(context, location)) {
+            Log.d(LOG_TAG, "Already have version " + version + " for " + location);
+            return null;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putString(SunshineSyncAdapter.SYNC_EXTRAS_PUSHED_LOCATION, location);
+        extras.putLong(SunshineSyncAdapter.SYNC_EXTRAS_PUSHED_VERSION, version);
+        String delta = data.getString(DATA_DELTA);
+        if (!TextUtils.isEmpty(delta)) {
+            extras.putString(SunshineSyncAdapter.SYNC_EXTRAS_PUSHED_DELTA, delta);
+        }
+        return extras;
+    }
+
+    /**
+     * Returns whether a delta's days are exactly the days from {@code julianStartDay} on, one
+     * after the other, so that storing them by position puts each under its own date.  Each
+     * day's "dt" is a time on its date in UTC, as OpenWeatherMap sends it.
+     *
+     * @throws JSONException if the delta isn't a forecast with a "dt" for every day
+     */
+    static boolean isStorableDelta(String delta, int julianStartDay) throws JSONException {
+        JSONArray days = new JSONObject(delta).getJSONArray(ForecastJsonParser.OWM_LIST);
+        for (int i = 0; i < days.length(); i++) {
+            long dateInMillis = days.getJSONObject(i).getLong(ForecastJsonParser.OWM_DATE) * 1000;
+            if (Time.getJulianDay(dateInMillis, 0) != julianStartDay + i) {
+                return false;
+            }
+        }
+        return days.length() > 0;
+    }
+
+    static long getAppliedVersion(Context context, String location) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_VERSION_PREFIX + location, 0);
+    }
+
+    /**
+     * Remembers that {@code version} is stored for {@code location}.  This uses commit to write
+     * to the shared preferences, so it should not be called from the UI thread.
+     */
+    static void setAppliedVersion(Context context, String location, long version) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putLong(PREF_VERSION_PREFIX + location, version)
+                .commit();
+    }
+
+    /**
+     * Forgets every version applied.
+     */
+    static void reset(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(PREF_VERSION_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        editor.commit();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+/**
+ * Where {@link SunshineSyncAdapter} gets its forecasts from.  The sync adapter only stores what
+ * a source returns, so a source can be swapped out to run the rest of the sync against
+ * something other than OpenWeatherMap.
+ */
+interface ForecastSource {
+
+    /**
+     * Fetches and parses the forecast for one location.  This doesn't touch the database or
+     * the location status, and it's called for several locations at once, so implementations
+     * must be thread safe.  Errors are reported through {@link Result#status}, never thrown.
+     *
+     * @param locationQuery the location setting to fetch the forecast for
+     * @param julianStartDay the julian day the forecast's first day is stored under
+     */
+    Result fetchForecast(String locationQuery, int julianStartDay);
+
+    /**
+     * What fetching one location's forecast produced.  {@link #forecast} is null when the
+     * forecast wasn't modified or couldn't be fetched; {@link #status} says which.
+     */
+    class Result {
+        final String locationQuery;
+        @SunshineSyncAdapter.LocationStatus int status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+        ForecastJsonParser.Forecast forecast;
+        // The validators to save once the forecast has been stored, if the source has any
+        ForecastHttp.Validators validators;
+
+        // What the fetch cost, for the sync metrics.  Sources that don't have one of these
+        // stages leave it at 0.
+        long connectMillis;
+        long downloadBytes;
+        long downloadMillis;
+        long parseMillis;
+
+        Result(String locationQuery) {
+            this.locationQuery = locationQuery;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Fetches forecasts from OpenWeatherMap's daily forecast API, or from anything else that
+ * speaks it at another base URL.
+ */
+class OwmForecastSource implements ForecastSource {
+    private static final String LOG_TAG = OwmForecastSource.class.getSimpleName();
+
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    static final String OWM_FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+
+    private final Context mContext;
+    private final String mBaseUrl;
+
+    OwmForecastSource(Context context) {
+        this(context, OWM_FORECAST_BASE_URL);
+    }
+
+    /**
+     * @param baseUrl the URL the forecast query parameters are appended to
+     */
+    OwmForecastSource(Context context, String baseUrl) {
+        mContext = context.getApplicationContext();
+        mBaseUrl = baseUrl;
+        ForecastHttp.installResponseCache(context);
+    }
+
+    /**
+     * Builds the forecast URL for a location.
+     */
+    URL buildForecastUrl(String locationQuery) throws MalformedURLException {
+        String format = "json";
+        String units = "metric";
+        int numDays = 14;
+
+        final String QUERY_PARAM = "q";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+
+        Uri builtUri = Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationQuery)
+                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .build();
+
+        return new URL(builtUri.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * When the server, or the response cache, says the forecast hasn't changed since it was
+     * last stored, nothing is parsed and the result has no forecast.
+     */
+    @Override
+    public Result fetchForecast(String locationQuery, int julianStartDay) {
+        Result result = new Result(locationQuery);
+
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+
+        // Will contain the raw JSON response as a string.
+        String forecastJsonStr = null;
+
+        try {
+            // Create the request to OpenWeatherMap, and open the connection
+            URL url = buildForecastUrl(locationQuery);
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            ForecastHttp.prepareRequest(mContext, urlConnection);
+            long connectStart = SystemClock.elapsedRealtime();
+            urlConnection.connect();
+            long downloadStart = SystemClock.elapsedRealtime();
+            result.connectMillis = downloadStart - connectStart;
+
+            if (ForecastHttp.isNotModified(mContext, urlConnection)) {
+                // What we stored last time is still current
+                result.downloadMillis = SystemClock.elapsedRealtime() - downloadStart;
+                Log.d(LOG_TAG, "Forecast for " + locationQuery + " not modified");
+                return result;
+            }
+
+            ForecastHttp.CountingInputStream rawStream = ForecastHttp.openRawStream(urlConnection);
+            InputStream inputStream = ForecastHttp.decode(urlConnection, rawStream);
+
+            // The parse is timed in CPU time, since on Honeycomb and later it also waits on the
+            // network, which is already counted in the download time
+            long parseStart;
+            ForecastJsonParser.Forecast forecast;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse the rows straight off the stream.  An empty stream shows up as an
+                // IOException, which is handled like a server that isn't returning data.
+                parseStart = SystemClock.currentThreadTimeMillis();
+                forecast = ForecastJsonParser.parseStream(inputStream, julianStartDay);
+            } else {
+                // Read the input stream into a String
+                StringBuffer buffer = new StringBuffer();
+                reader = new BufferedReader(new InputStreamReader(inputStream));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                    // But it does make debugging a *lot* easier if you print out the completed
+                    // buffer for debugging.
+                    buffer.append(line + "\n");
+                }
+
+                if (buffer.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    return result;
+                }
+                forecastJsonStr = buffer.toString();
+                parseStart = SystemClock.currentThreadTimeMillis();
+                forecast = ForecastJsonParser.parseJson(forecastJsonStr, julianStartDay);
+            }
+            result.parseMillis = SystemClock.currentThreadTimeMillis() - parseStart;
+            rawStream.drain();
+            result.downloadBytes = rawStream.getCount();
+            result.downloadMillis = SystemClock.elapsedRealtime() - downloadStart;
+            Log.d(LOG_TAG, "Downloaded " + rawStream.getCount() + " bytes for " + locationQuery);
+
+            switch (forecast.messageCode) {
+                case HttpURLConnection.HTTP_OK:
+                    result.forecast = forecast;
+                    result.validators = ForecastHttp.getValidators(urlConnection);
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    break;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to parse it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            e.printStackTrace();
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+            ForecastHttp.flushResponseCache();
+        }
+        return result;
+    }
+}
@@ -7,21 +7,26 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -30,26 +35,35 @@ import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.wear.WearWeatherPublisher;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -59,11 +73,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
+    // When new forecasts are pushed over GCM the periodic sync is only there to catch pushes
+    // that were lost, so it can run far less often.  Once a day, in seconds.
+    public static final int PUSH_SYNC_INTERVAL = 60 * 60 * 24;
+    public static final int PUSH_SYNC_FLEXTIME = PUSH_SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // How many days of art are downloaded once their forecasts are stored, which is as far as
+    // the list and the widgets go without scrolling
+    private static final int WARM_ART_DAYS = 7;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+    private static final String[] TODAY_WEATHER_PROJECTION = new String[] {
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
@@ -71,10 +94,39 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     };
 
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_CITY_NAME = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_SHORT_DESC = 5;
+
+    // Every column of a today snapshot but _id, to compare a new one against the stored one
+    private static final String[] TODAY_SNAPSHOT_COLUMNS = new String[] {
+            WeatherContract.TodayEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.TodayEntry.COLUMN_CITY_NAME,
+            WeatherContract.TodayEntry.COLUMN_DATE,
+            WeatherContract.TodayEntry.COLUMN_WEATHER_ID,
+            WeatherContract.TodayEntry.COLUMN_SHORT_DESC,
+            WeatherContract.TodayEntry.COLUMN_HIGH,
+            WeatherContract.TodayEntry.COLUMN_LOW,
+            WeatherContract.TodayEntry.COLUMN_ART_URL
+    };
+
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+            WeatherContract.TodayEntry.COLUMN_WEATHER_ID,
+            WeatherContract.TodayEntry.COLUMN_HIGH,
+            WeatherContract.TodayEntry.COLUMN_LOW,
+            WeatherContract.TodayEntry.COLUMN_SHORT_DESC,
+            WeatherContract.TodayEntry.COLUMN_ART_URL
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_NOTIFY_WEATHER_ID = 0;
+    private static final int INDEX_NOTIFY_HIGH = 1;
+    private static final int INDEX_NOTIFY_LOW = 2;
+    private static final int INDEX_NOTIFY_SHORT_DESC = 3;
+    private static final int INDEX_NOTIFY_ART_URL = 4;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -86,8 +138,41 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Sync extras for syncing every saved location instead of just the preferred one, and for
+    // how many of their forecasts to fetch at once
+    public static final String SYNC_EXTRAS_ALL_LOCATIONS = "all_locations";
+    public static final String SYNC_EXTRAS_MAX_PARALLEL_FETCHES = "max_parallel_fetches";
+    public static final int DEFAULT_MAX_PARALLEL_FETCHES = 3;
+
+    // Sync extras for a forecast pushed over GCM: the location it's for, its version, and the
+    // days from today up to the last one that changed, if the push carried them.  See
+    // ForecastPush.
+    public static final String SYNC_EXTRAS_PUSHED_LOCATION = "pushed_location";
+    public static final String SYNC_EXTRAS_PUSHED_VERSION = "pushed_version";
+    public static final String SYNC_EXTRAS_PUSHED_DELTA = "pushed_delta";
+
+    private ForecastSource mForecastSource;
+    private SyncScheduler mScheduler;
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
+        mForecastSource = new OwmForecastSource(context);
+        mScheduler = new SyncScheduler(context);
+    }
+
+    /**
+     * Replaces where the forecasts are fetched from, so the rest of the sync can be run against
+     * a local stand-in.
+     */
+    void setForecastSource(ForecastSource forecastSource) {
+        mForecastSource = forecastSource;
+    }
+
+    /**
+     * Replaces what decides whether a sync fetches, so tests can control its clock.
+     */
+    void setScheduler(SyncScheduler scheduler) {
+        mScheduler = scheduler;
     }
 
     @Override
@@ -95,264 +180,437 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         Log.d(LOG_TAG, "Starting sync");
         String locationQuery = Utility.getPreferredLocation(getContext());
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        String pushedLocation = extras.getString(SYNC_EXTRAS_PUSHED_LOCATION);
+        if (pushedLocation != null) {
+            syncPushedForecast(pushedLocation, extras.getLong(SYNC_EXTRAS_PUSHED_VERSION),
+                    extras.getString(SYNC_EXTRAS_PUSHED_DELTA), locationQuery);
+            return;
+        }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        boolean manual = extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+        boolean allLocations =
+                extras.getBoolean(SYNC_EXTRAS_ALL_LOCATIONS, isSyncAllLocationsEnabled(getContext()));
+        if (manual) {
+            mScheduler.onImmediateSyncStarted();
+        }
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        if (!mScheduler.shouldFetch(manual, locationQuery, allLocations)) {
+            // Either the forecast is fresh or we're backing off, so leave the radio alone.  The
+            // settings that today's snapshot is formatted with may still have changed.
+            Log.d(LOG_TAG, "Skipping the fetch, " + (mScheduler.getBackoffUntil() > 0
+                    ? "backing off until " + mScheduler.getBackoffUntil() : "forecast is fresh"));
+            refreshStoredForecast(locationQuery);
+            return;
+        }
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
+        @LocationStatus int status;
+        if (allLocations) {
+            int maxParallelFetches =
+                    extras.getInt(SYNC_EXTRAS_MAX_PARALLEL_FETCHES, DEFAULT_MAX_PARALLEL_FETCHES);
+            status = syncForecasts(getSavedLocations(locationQuery), locationQuery,
+                    maxParallelFetches);
+        } else {
+            status = syncForecast(locationQuery);
+        }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
+        long backoffUntil = mScheduler.recordResult(locationQuery, allLocations, status);
+        if (backoffUntil > 0) {
+            // Keep the sync manager from even starting the periodic syncs we'd skip
+            syncResult.delayUntil = backoffUntil / 1000;
+            Log.d(LOG_TAG, "Sync failed " + mScheduler.getFailureCount() +
+                    " times in a row, backing off until " + backoffUntil);
         }
-        return;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Fetches the forecast for {@code locationQuery} and stores it.  When the source says the
+     * forecast hasn't changed since it was last stored nothing is written.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * @return the location status of {@code locationQuery}
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
+    @LocationStatus
+    int syncForecast(String locationQuery) {
+        SyncMetrics metrics = new SyncMetrics();
+        int julianStartDay = ForecastJsonParser.getJulianStartDay();
+        ForecastSource.Result result = mForecastSource.fetchForecast(locationQuery, julianStartDay);
+        return storeForecasts(Collections.singletonList(result), locationQuery, julianStartDay,
+                metrics);
+    }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+    /**
+     * Stores a forecast that was pushed for {@code pushedLocation}.  The days the push carried
+     * are stored as they are; when it didn't carry any, or they can't be parsed or don't start
+     * today, only that location is fetched.  Pushes for locations that aren't saved are
+     * ignored.
+     *
+     * @param version the version of the pushed forecast, which is remembered once it's stored
+     * @param delta the days from today up to the last one that changed, as forecast JSON, or
+     * null.  See {@link ForecastPush#isStorableDelta}.
+     * @return the location status of {@code pushedLocation}, or {@link #LOCATION_STATUS_UNKNOWN}
+     * if it was ignored
+     */
+    @LocationStatus
+    int syncPushedForecast(String pushedLocation, long version, String delta,
+                           String preferredLocation) {
+        if (!getSavedLocations(preferredLocation).contains(pushedLocation)) {
+            Log.d(LOG_TAG, "Ignoring a pushed forecast for " + pushedLocation);
+            return LOCATION_STATUS_UNKNOWN;
+        }
+        SyncMetrics metrics = new SyncMetrics();
+        int julianStartDay = ForecastJsonParser.getJulianStartDay();
+        ForecastSource.Result result = null;
+        if (delta != null) {
+            try {
+                ForecastJsonParser.Forecast forecast =
+                        ForecastJsonParser.parseJson(delta, julianStartDay);
+                if (forecast.messageCode != HttpURLConnection.HTTP_OK) {
+                    Log.w(LOG_TAG, "Pushed forecast has code " + forecast.messageCode +
+                            ", fetching it instead");
+                } else if (!ForecastPush.isStorableDelta(delta, julianStartDay)) {
+                    // Its days would be stored under the wrong dates
+                    Log.w(LOG_TAG, "Pushed forecast doesn't start today or skips days, " +
+                            "fetching it instead");
+                } else {
+                    result = new ForecastSource.Result(pushedLocation);
+                    result.forecast = forecast;
                 }
+            } catch (JSONException e) {
+                Log.w(LOG_TAG, "Unable to parse the pushed forecast, fetching it instead", e);
             }
+        }
+        if (result == null) {
+            result = mForecastSource.fetchForecast(pushedLocation, julianStartDay);
+        }
+        storeForecasts(Collections.singletonList(result), preferredLocation, julianStartDay,
+                metrics);
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
+        if (result.status == LOCATION_STATUS_OK) {
+            ForecastPush.setAppliedVersion(getContext(), pushedLocation, version);
+        }
+        if (pushedLocation.equals(preferredLocation)) {
+            // A forecast that was just pushed doesn't need fetching again by the periodic sync
+            mScheduler.recordResult(preferredLocation, false, result.status);
+        }
+        return result.status;
+    }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    /**
+     * Rebuilds today's snapshot from the forecast that's already stored, without fetching
+     * anything, and updates everything that shows it if it changed.
+     */
+    void refreshStoredForecast(String locationQuery) {
+        storeForecasts(Collections.<ForecastSource.Result>emptyList(), locationQuery,
+                ForecastJsonParser.getJulianStartDay(), new SyncMetrics());
+    }
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+    /**
+     * Fetches the forecasts for several locations, at most {@code maxParallelFetches} at a time,
+     * then stores them all in one transaction and updates everything that shows the weather
+     * once.
+     *
+     * @param locationQueries the location settings to fetch
+     * @param preferredLocation the location whose result is reported as the location status
+     * @return the location status of {@code preferredLocation}, or {@link
+     * #LOCATION_STATUS_UNKNOWN} if the sync was cancelled
+     */
+    @LocationStatus
+    int syncForecasts(Collection<String> locationQueries, String preferredLocation,
+                       int maxParallelFetches) {
+        SyncMetrics metrics = new SyncMetrics();
+        final int julianStartDay = ForecastJsonParser.getJulianStartDay();
+        final ForecastSource forecastSource = mForecastSource;
+        List<Callable<ForecastSource.Result>> fetches =
+                new ArrayList<Callable<ForecastSource.Result>>();
+        for (final String locationQuery : locationQueries) {
+            fetches.add(new Callable<ForecastSource.Result>() {
+                @Override
+                public ForecastSource.Result call() {
+                    return forecastSource.fetchForecast(locationQuery, julianStartDay);
+                }
+            });
+        }
+        if (fetches.isEmpty()) {
+            return LOCATION_STATUS_UNKNOWN;
+        }
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(maxParallelFetches, fetches.size())));
+        List<ForecastSource.Result> results = new ArrayList<ForecastSource.Result>(fetches.size());
+        try {
+            for (Future<ForecastSource.Result> future : executor.invokeAll(fetches)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled.  Don't store a partial result.
+            Thread.currentThread().interrupt();
+            return LOCATION_STATUS_UNKNOWN;
+        } catch (ExecutionException e) {
+            // Sources report their errors in the result, so this is a bug
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return storeForecasts(results, preferredLocation, julianStartDay, metrics);
+    }
 
-                double high;
-                double low;
+    /**
+     * Returns every saved location setting, preferred location first.
+     */
+    private Set<String> getSavedLocations(String preferredLocation) {
+        Set<String> locationSettings = new LinkedHashSet<String>();
+        locationSettings.add(preferredLocation);
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+            cursor.close();
+        }
+        return locationSettings;
+    }
 
-                String description;
-                int weatherId;
+    /**
+     * Take the fetched forecasts and store them in the database in a single transaction, then
+     * let everything that shows the weather know about it, once.
+     *
+     * @param preferredLocation the location whose result is reported as the location status
+     * @param metrics the sync's metrics, which are recorded once everything is done
+     * @return the location status of {@code preferredLocation}, or {@link
+     * #LOCATION_STATUS_UNKNOWN} if it wasn't fetched
+     */
+    @LocationStatus
+    private int storeForecasts(List<ForecastSource.Result> results, String preferredLocation,
+                                int julianStartDay, SyncMetrics metrics) {
+        // Each forecast's location goes in first, and its days take the location's id from
+        // that insert through a back-reference, whether the location is new or not
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        int received = 0;
+        for (ForecastSource.Result result : results) {
+            metrics.addFetch(result);
+            ForecastJsonParser.Forecast forecast = result.forecast;
+            if (forecast == null) {
+                continue;
+            }
+            int locationIndex = operations.size();
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                    .withValues(createLocationValues(result.locationQuery, forecast.cityName,
+                            forecast.cityLatitude, forecast.cityLongitude))
+                    .build());
+            for (ContentValues weatherValues : forecast.weatherValues) {
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues)
+                        .withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                                locationIndex)
+                        .build());
+            }
+            received += forecast.weatherValues.size();
+        }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+        // add to database, all in one transaction
+        int changed = 0;
+        int deleted = 0;
+        if ( received > 0 ) {
+            // delete old data so we don't build up an endless history
+            int deleteIndex = operations.size();
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                            new String[] {Long.toString(ForecastJsonParser.getDateForDay(
+                                    new Time(), julianStartDay, -1))})
+                    .build());
+
+            metrics.startStage();
+            try {
+                ContentProviderResult[] batchResults = getContext().getContentResolver()
+                        .applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+                for (int i = 0; i < deleteIndex; i++) {
+                    if (isWrittenWeatherRow(batchResults[i].uri)) {
+                        changed++;
+                    }
+                }
+                deleted = batchResults[deleteIndex].count;
+            } catch (RemoteException | OperationApplicationException | SQLException e) {
+                // SQLException is what the provider throws for a row it couldn't insert
+                Log.e(LOG_TAG, "Unable to store the forecasts", e);
+                // Nothing was stored, so there's nothing to tell anyone about.  The fetches
+                // can't count as successes either, or the scheduler would consider the
+                // forecast fresh and not fetch it again.  No status is specific to this, and
+                // this one makes the scheduler back off and retry.
+                received = 0;
+                for (ForecastSource.Result result : results) {
+                    if (result.forecast != null) {
+                        result.status = LOCATION_STATUS_SERVER_INVALID;
+                    }
+                }
+            }
+            metrics.endStage(WeatherContract.SyncMetricsEntry.COLUMN_STORE_MILLIS);
+        }
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
+        // Rebuild today's snapshot even when nothing new was fetched, since the units or the
+        // art pack it was formatted with may have changed since the last sync
+        metrics.startStage();
+        boolean todayChanged = updateTodaySnapshot(getContext(), preferredLocation);
+        metrics.endStage(WeatherContract.SyncMetricsEntry.COLUMN_TODAY_SNAPSHOT_MILLIS);
+
+        // Only redraw the widgets, Muzei and the watch if what they show could have changed
+        if (changed > 0 || deleted > 0 || todayChanged) {
+            metrics.startStage();
+            updateWidgets();
+            metrics.endStage(WeatherContract.SyncMetricsEntry.COLUMN_UPDATE_WIDGETS_MILLIS);
+            metrics.startStage();
+            updateMuzei();
+            metrics.endStage(WeatherContract.SyncMetricsEntry.COLUMN_UPDATE_MUZEI_MILLIS);
+            metrics.startStage();
+            updateWearable();
+            metrics.endStage(WeatherContract.SyncMetricsEntry.COLUMN_UPDATE_WEARABLE_MILLIS);
+        }
 
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+        if ( received > 0 ) {
+            metrics.startStage();
+            notifyWeather();
+            metrics.endStage(WeatherContract.SyncMetricsEntry.COLUMN_NOTIFY_WEATHER_MILLIS);
 
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+            // Only now that the forecasts are stored can the next requests be conditional
+            for (ForecastSource.Result result : results) {
+                if (result.validators != null) {
+                    ForecastHttp.saveValidators(getContext(), result.validators);
+                }
+            }
+        }
 
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+        // New days, or a new art pack, may need art that was never downloaded.  Doing that now
+        // means the list and the widgets only ever read it from disk, and doing it last means
+        // nothing above waits on it.
+        warmArt(preferredLocation, received > 0);
+
+        long totalMillis = metrics.record(getContext());
+        Log.d(LOG_TAG, "Sync Complete. " + results.size() + " Locations, " + received +
+                " Received, " + changed + " Changed, " + deleted + " Deleted in " +
+                totalMillis + " ms");
+
+        @LocationStatus int preferredStatus = LOCATION_STATUS_UNKNOWN;
+        for (ForecastSource.Result result : results) {
+            if (result.locationQuery.equals(preferredLocation)) {
+                preferredStatus = result.status;
+                setLocationStatus(getContext(), result.status);
+            } else if (result.status != LOCATION_STATUS_OK) {
+                Log.w(LOG_TAG, "Unable to sync " + result.locationQuery + ": " + result.status);
+            }
+        }
+        return preferredStatus;
+    }
 
-                ContentValues weatherValues = new ContentValues();
+    /**
+     * Returns today's snapshot for {@code locationSetting}, read with {@code projection}.
+     *
+     * The snapshot is only rebuilt by a sync, so after midnight it still holds yesterday until
+     * the next one.  If it does, it's rebuilt here from the stored forecast first, and if there
+     * is no forecast for today either the cursor is empty, as it would be without a snapshot.
+     *
+     * @return the snapshot, or null if the query failed
+     */
+    public static Cursor queryToday(Context context, String locationSetting,
+            String[] projection) {
+        if (!isTodaySnapshotCurrent(context, locationSetting)) {
+            updateTodaySnapshot(context, locationSetting);
+            if (!isTodaySnapshotCurrent(context, locationSetting)) {
+                return new MatrixCursor(projection);
+            }
+        }
+        Uri todayUri = WeatherContract.TodayEntry.buildTodayUri(locationSetting);
+        return context.getContentResolver().query(todayUri, projection, null, null, null);
+    }
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+    /**
+     * Returns true if the today snapshot for {@code locationSetting} was made for today.
+     */
+    private static boolean isTodaySnapshotCurrent(Context context, String locationSetting) {
+        Uri todayUri = WeatherContract.TodayEntry.buildTodayUri(locationSetting);
+        Cursor cursor = context.getContentResolver().query(todayUri,
+                new String[]{WeatherContract.TodayEntry.COLUMN_DATE}, null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst()
+                    && Utility.getJulianDay(cursor.getLong(0)) == Utility.getCurrentJulianDay();
+        } finally {
+            cursor.close();
+        }
+    }
 
-                cVVector.add(weatherValues);
+    /**
+     * Rebuilds the today snapshot for {@code locationSetting} from the stored forecast, so that
+     * everything that shows today's weather reads one row instead of running its own query.
+     * The snapshot is only written if it differs from the stored one.
+     *
+     * @return true if the snapshot changed
+     */
+    private static boolean updateTodaySnapshot(Context context, String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, TODAY_WEATHER_PROJECTION,
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
+        ContentValues todayValues = new ContentValues();
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
             }
+            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_CITY_NAME,
+                    cursor.getString(INDEX_CITY_NAME));
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_DATE, cursor.getLong(INDEX_DATE));
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_WEATHER_ID, weatherId);
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_SHORT_DESC,
+                    cursor.getString(INDEX_SHORT_DESC));
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_HIGH,
+                    Utility.formatTemperature(context, cursor.getDouble(INDEX_MAX_TEMP)));
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_LOW,
+                    Utility.formatTemperature(context, cursor.getDouble(INDEX_MIN_TEMP)));
+            todayValues.put(WeatherContract.TodayEntry.COLUMN_ART_URL,
+                    Utility.getArtUrlForWeatherCondition(context, weatherId));
+        } finally {
+            cursor.close();
+        }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+        Uri todayUri = WeatherContract.TodayEntry.buildTodayUri(locationSetting);
+        Cursor stored = context.getContentResolver().query(todayUri, TODAY_SNAPSHOT_COLUMNS,
+                null, null, null);
+        if (stored != null) {
+            try {
+                if (stored.moveToFirst() && matchesSnapshot(stored, todayValues)) {
+                    return false;
+                }
+            } finally {
+                stored.close();
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
+        context.getContentResolver().insert(WeatherContract.TodayEntry.CONTENT_URI, todayValues);
+        return true;
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /**
+     * Returns true if the row {@code cursor} is on, read with {@link #TODAY_SNAPSHOT_COLUMNS},
+     * holds the same snapshot as {@code todayValues}.
+     */
+    private static boolean matchesSnapshot(Cursor cursor, ContentValues todayValues) {
+        for (int i = 0; i < TODAY_SNAPSHOT_COLUMNS.length; i++) {
+            String value = todayValues.getAsString(TODAY_SNAPSHOT_COLUMNS[i]);
+            String storedValue = cursor.getString(i);
+            if (value == null ? storedValue != null : !value.equals(storedValue)) {
+                return false;
+            }
         }
+        return true;
     }
 
     private void updateWidgets() {
@@ -373,6 +631,64 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    private void updateWearable() {
+        // Only pushes a DataItem when today's high, low or weather id changed
+        WearWeatherPublisher.publishToday(getContext());
+    }
+
+    /**
+     * Downloads the art of the coming {@link #WARM_ART_DAYS} days of {@code locationSetting}
+     * into Glide's disk cache, where every load of it looks first.  Days share art, so each
+     * image is only downloaded once, and all of them are started before waiting on any.
+     *
+     * @param newDays true if days were stored, otherwise the art is only downloaded if the art
+     *                pack changed since it last was
+     */
+    private void warmArt(String locationSetting, boolean newDays) {
+        Context context = getContext();
+        if (Utility.usingLocalGraphics(context)) {
+            return;
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String artPack = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+        String lastWarmedKey = context.getString(R.string.pref_last_warmed_art_pack);
+        if (!newDays && artPack.equals(prefs.getString(lastWarmedKey, null))) {
+            return;
+        }
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri,
+                new String[] {WeatherContract.WeatherEntry.COLUMN_WEATHER_ID}, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        Map<String, FutureTarget<File>> downloads = new LinkedHashMap<String, FutureTarget<File>>();
+        try {
+            for (int day = 0; day < WARM_ART_DAYS && cursor.moveToNext(); day++) {
+                String artUrl = Utility.getArtUrlForWeatherCondition(context, cursor.getInt(0));
+                if (artUrl != null && !downloads.containsKey(artUrl)) {
+                    downloads.put(artUrl, Glide.with(context)
+                            .load(artUrl)
+                            .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (Map.Entry<String, FutureTarget<File>> download : downloads.entrySet()) {
+            try {
+                download.getValue().get();
+            } catch (InterruptedException | ExecutionException e) {
+                // Whatever needs it will try again
+                Log.w(LOG_TAG, "Unable to download art from " + download.getKey(), e);
+            }
+        }
+        prefs.edit().putString(lastWarmedKey, artPack).commit();
+    }
+
     private void notifyWeather() {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
@@ -390,21 +706,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                // today's snapshot already has everything the notification shows
+                Cursor cursor = queryToday(context, locationQuery, NOTIFY_WEATHER_PROJECTION);
 
                 if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                    int weatherId = cursor.getInt(INDEX_NOTIFY_WEATHER_ID);
+                    String high = cursor.getString(INDEX_NOTIFY_HIGH);
+                    String low = cursor.getString(INDEX_NOTIFY_LOW);
+                    String desc = cursor.getString(INDEX_NOTIFY_SHORT_DESC);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+                    String artUrl = cursor.getString(INDEX_NOTIFY_ART_URL);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -423,6 +737,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                         largeIcon = Glide.with(context)
                                 .load(artUrl)
                                 .asBitmap()
+                                .diskCacheStrategy(DiskCacheStrategy.ALL)
                                 .error(artResourceId)
                                 .fitCenter()
                                 .into(largeIconWidth, largeIconHeight).get();
@@ -435,8 +750,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     // Define the text of the forecast.
                     String contentText = String.format(context.getString(R.string.format_notification),
                             desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
+                            high,
+                            low);
 
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
@@ -481,53 +796,32 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to build the values of a location for the weather database.  Inserting
+     * them leaves a location that's already stored as it is.
      *
      * @param locationSetting The location string used to request updates from the server.
      * @param cityName A human-readable city name, e.g "Mountain View"
      * @param lat the latitude of the city
      * @param lon the longitude of the city
-     * @return the row ID of the added location.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    private static ContentValues createLocationValues(String locationSetting, String cityName,
+                                                      double lat, double lon) {
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        return locationValues;
+    }
 
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    /**
+     * Returns true if {@code uri}, returned by a weather insert, is the row that was written.
+     * A day that was already stored with the same values gives back the weather directory.
+     */
+    private static boolean isWrittenWeatherRow(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return segments.size() == 2
+                && WeatherContract.PATH_WEATHER.equals(segments.get(0));
     }
 
     /**
@@ -550,17 +844,50 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to have the sync adapter sync immediately
+     * Helper method to have the sync adapter sync immediately.  A request made while another is
+     * still waiting to start is dropped, since the sync that runs will pick up both.
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        if (!new SyncScheduler(context).requestImmediateSync()) {
+            // One is already on its way, and it will see whatever changed
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        // Whatever asked for this sync shouldn't wait out the backoff after a failed one
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_IGNORE_BACKOFF, true);
         ContentResolver.requestSync(getSyncAccount(context),
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter store a forecast pushed over GCM.  Unlike
+     * {@link #syncImmediately}, this respects the user's sync settings.
+     * @param extras the extras built by ForecastPush
+     */
+    static void requestPushedSync(Context context, Bundle extras) {
+        extras.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        extras.putBoolean(ContentResolver.SYNC_EXTRAS_IGNORE_BACKOFF, true);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), extras);
+    }
+
+    /**
+     * Stretches the periodic sync when forecasts are pushed over GCM, and restores it when
+     * they aren't.
+     * @param context The context used to access the account service
+     * @param pushEnabled whether the app is registered for GCM
+     */
+    public static void setPushEnabled(Context context, boolean pushEnabled) {
+        if (pushEnabled) {
+            configurePeriodicSync(context, PUSH_SYNC_INTERVAL, PUSH_SYNC_FLEXTIME);
+        } else {
+            configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        }
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -621,6 +948,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         getSyncAccount(context);
     }
 
+    private static boolean isSyncAllLocationsEnabled(Context c) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        return sp.getBoolean(c.getString(R.string.pref_sync_all_locations_key),
+                Boolean.parseBoolean(c.getString(R.string.pref_sync_all_locations_default)));
+    }
+
     /**
      * Sets the location status into shared preference.  This function should not be called from
      * the UI thread because it uses commit to write to the shared preferences.
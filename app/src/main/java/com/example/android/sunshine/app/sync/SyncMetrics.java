@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncMetricsEntry;
+
+/**
+ * Times the stages of one sync, then records them with the provider as a row of
+ * {@link SyncMetricsEntry}, so a slow stage can be found after the fact.
+ *
+ * Only the thread running the sync uses it.  The fetches, which run in parallel, time
+ * themselves in their {@link ForecastSource.Result} and are added here afterwards.
+ */
+class SyncMetrics {
+    private final long mStartTime = System.currentTimeMillis();
+    private final long mStartElapsed = SystemClock.elapsedRealtime();
+    private final ContentValues mValues = new ContentValues();
+    private long mStageStart;
+
+    SyncMetrics() {
+        // Stages that never ran read as 0 rather than null
+        for (String column : SyncMetricsEntry.COLUMNS) {
+            mValues.put(column, 0L);
+        }
+        mValues.remove(SyncMetricsEntry._ID);
+        mValues.put(SyncMetricsEntry.COLUMN_START_TIME, mStartTime);
+    }
+
+    /**
+     * Adds what fetching one location cost.
+     */
+    void addFetch(ForecastSource.Result result) {
+        add(SyncMetricsEntry.COLUMN_LOCATIONS, 1);
+        add(SyncMetricsEntry.COLUMN_CONNECT_MILLIS, result.connectMillis);
+        add(SyncMetricsEntry.COLUMN_DOWNLOAD_BYTES, result.downloadBytes);
+        add(SyncMetricsEntry.COLUMN_DOWNLOAD_MILLIS, result.downloadMillis);
+        add(SyncMetricsEntry.COLUMN_PARSE_MILLIS, result.parseMillis);
+    }
+
+    void startStage() {
+        mStageStart = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Adds the time since {@link #startStage} to {@code column}.
+     */
+    void endStage(String column) {
+        add(column, SystemClock.elapsedRealtime() - mStageStart);
+    }
+
+    /**
+     * Finishes timing the sync and hands the row to the provider.
+     *
+     * @return how long the whole sync took, in milliseconds
+     */
+    long record(Context context) {
+        long totalMillis = SystemClock.elapsedRealtime() - mStartElapsed;
+        mValues.put(SyncMetricsEntry.COLUMN_TOTAL_MILLIS, totalMillis);
+        context.getContentResolver().insert(SyncMetricsEntry.CONTENT_URI, mValues);
+        return totalMillis;
+    }
+
+    private void add(String column, long value) {
+        mValues.put(column, mValues.getAsLong(column) + value);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.Random;
+
+/**
+ * Decides when a sync is worth turning the radio on for.
+ *
+ * After a failed sync, periodic syncs stop fetching for an exponentially growing, jittered
+ * backoff, so a server that's down or a location that doesn't exist doesn't cost a network
+ * request every sync interval.  A sync whose location was fetched successfully a short while ago
+ * doesn't fetch at all.  And requests for an immediate sync are coalesced while one is already
+ * waiting to start, since the sync reads the settings when it runs, not when it's requested.
+ *
+ * A sync that doesn't fetch still rebuilds today's snapshot from what's stored, which needs no
+ * network.  The state is kept in the default shared preferences, so it survives the sync
+ * process being killed.
+ */
+class SyncScheduler {
+
+    /**
+     * Where the scheduler gets the time, so tests can move it.
+     */
+    interface Clock {
+        /**
+         * @return the wall clock time in milliseconds since the epoch
+         */
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static final long MINUTE_IN_MILLIS = 1000 * 60;
+    private static final long HOUR_IN_MILLIS = MINUTE_IN_MILLIS * 60;
+
+    // How long a successful fetch is good for.  Half the sync interval, so a periodic sync
+    // shortly after a manual one doesn't fetch the same forecast again.
+    static final long FRESH_MILLIS = SunshineSyncAdapter.SYNC_INTERVAL * 1000L / 2;
+
+    // The backoff after the first failure, which doubles with every failure after it
+    static final long BASE_BACKOFF_MILLIS = HOUR_IN_MILLIS;
+    static final long MAX_BACKOFF_MILLIS = 24 * HOUR_IN_MILLIS;
+
+    // How long a requested immediate sync has to start before we stop assuming it's coming
+    static final long COALESCE_MILLIS = MINUTE_IN_MILLIS;
+
+    private static final String PREF_LAST_SUCCESS = "sync_last_success";
+    private static final String PREF_LAST_SUCCESS_LOCATION = "sync_last_success_location";
+    private static final String PREF_LAST_SUCCESS_ALL_LOCATIONS = "sync_last_success_all_locations";
+    private static final String PREF_FAILURES = "sync_failures";
+    private static final String PREF_BACKOFF_UNTIL = "sync_backoff_until";
+    private static final String PREF_IMMEDIATE_REQUESTED = "sync_immediate_requested";
+
+    private final SharedPreferences mPrefs;
+    private final Clock mClock;
+    private final Random mRandom;
+
+    SyncScheduler(Context context) {
+        this(context, SYSTEM_CLOCK, new Random());
+    }
+
+    SyncScheduler(Context context, Clock clock, Random random) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mClock = clock;
+        mRandom = random;
+    }
+
+    /**
+     * Notes that an immediate sync is wanted.  Safe to call from the UI thread.
+     *
+     * @return false if one was requested recently and hasn't started yet, in which case it
+     * will pick up whatever changed and there's no need to request another
+     */
+    boolean requestImmediateSync() {
+        long now = mClock.currentTimeMillis();
+        long requested = mPrefs.getLong(PREF_IMMEDIATE_REQUESTED, 0);
+        if (requested > 0 && now >= requested && now - requested < COALESCE_MILLIS) {
+            return false;
+        }
+        mPrefs.edit().putLong(PREF_IMMEDIATE_REQUESTED, now).apply();
+        return true;
+    }
+
+    /**
+     * Notes that an immediate sync has started, so that the next request isn't coalesced into
+     * it.
+     */
+    void onImmediateSyncStarted() {
+        mPrefs.edit().remove(PREF_IMMEDIATE_REQUESTED).commit();
+    }
+
+    /**
+     * Returns whether a sync should fetch its forecasts from the network.
+     *
+     * @param manual whether the sync was requested by the app rather than run periodically.
+     *               Manual syncs follow a change the user made, so they ignore the backoff.
+     * @param locationSetting the preferred location
+     * @param allLocations whether every saved location is being synced
+     */
+    boolean shouldFetch(boolean manual, String locationSetting, boolean allLocations) {
+        if (isFresh(locationSetting, allLocations)) {
+            return false;
+        }
+        return manual || getBackoffUntil() == 0;
+    }
+
+    /**
+     * Returns whether the forecast for {@code locationSetting}, and the other saved locations
+     * if {@code allLocations}, was fetched successfully within {@link #FRESH_MILLIS}.
+     */
+    boolean isFresh(String locationSetting, boolean allLocations) {
+        long lastSuccess = mPrefs.getLong(PREF_LAST_SUCCESS, 0);
+        long age = mClock.currentTimeMillis() - lastSuccess;
+        // A clock that was set back makes the last success look like it's in the future, and
+        // then it can't be trusted
+        if (lastSuccess == 0 || age < 0 || age >= FRESH_MILLIS) {
+            return false;
+        }
+        if (!locationSetting.equals(mPrefs.getString(PREF_LAST_SUCCESS_LOCATION, null))) {
+            return false;
+        }
+        return !allLocations || mPrefs.getBoolean(PREF_LAST_SUCCESS_ALL_LOCATIONS, false);
+    }
+
+    /**
+     * Returns when the current backoff ends, in milliseconds since the epoch, or 0 if periodic
+     * syncs may fetch now.
+     */
+    long getBackoffUntil() {
+        long backoffUntil = mPrefs.getLong(PREF_BACKOFF_UNTIL, 0);
+        long remaining = backoffUntil - mClock.currentTimeMillis();
+        // A backoff longer than the longest we ever set means the clock was set back
+        if (remaining <= 0 || remaining > MAX_BACKOFF_MILLIS) {
+            return 0;
+        }
+        return backoffUntil;
+    }
+
+    /**
+     * Returns how many syncs in a row have failed.
+     */
+    int getFailureCount() {
+        return mPrefs.getInt(PREF_FAILURES, 0);
+    }
+
+    /**
+     * Records how a sync that fetched went.  This uses commit to write to the shared
+     * preferences, so it should not be called from the UI thread.
+     *
+     * @param status the status of the preferred location.  {@link
+     *               SunshineSyncAdapter#LOCATION_STATUS_UNKNOWN} means the sync didn't finish,
+     *               and isn't counted either way.
+     * @return when the backoff this starts ends, in milliseconds since the epoch, or 0 if the
+     * sync succeeded
+     */
+    long recordResult(String locationSetting, boolean allLocations,
+                      @SunshineSyncAdapter.LocationStatus int status) {
+        if (status == SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN) {
+            return 0;
+        }
+        long now = mClock.currentTimeMillis();
+        SharedPreferences.Editor editor = mPrefs.edit();
+        long backoffUntil = 0;
+        if (status == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+            editor.putLong(PREF_LAST_SUCCESS, now);
+            editor.putString(PREF_LAST_SUCCESS_LOCATION, locationSetting);
+            editor.putBoolean(PREF_LAST_SUCCESS_ALL_LOCATIONS, allLocations);
+            editor.remove(PREF_FAILURES);
+            editor.remove(PREF_BACKOFF_UNTIL);
+        } else {
+            int failures = getFailureCount() + 1;
+            backoffUntil = now + getBackoffMillis(failures);
+            editor.putInt(PREF_FAILURES, failures);
+            editor.putLong(PREF_BACKOFF_UNTIL, backoffUntil);
+        }
+        editor.commit();
+        return backoffUntil;
+    }
+
+    /**
+     * Returns how long to back off after {@code failures} failures in a row.  The backoff
+     * doubles with each failure up to {@link #MAX_BACKOFF_MILLIS}, and is then jittered down by
+     * up to half, so that devices that failed together don't all retry together.
+     */
+    long getBackoffMillis(int failures) {
+        long backoff = MAX_BACKOFF_MILLIS;
+        // Past this many doublings the backoff is capped anyway, and shifting further overflows
+        if (failures <= 16) {
+            backoff = Math.min(BASE_BACKOFF_MILLIS << (failures - 1), MAX_BACKOFF_MILLIS);
+        }
+        return backoff - (long) (mRandom.nextDouble() * (backoff / 2));
+    }
+
+    /**
+     * Forgets every sync, failed or not.
+     */
+    void reset() {
+        mPrefs.edit()
+                .remove(PREF_LAST_SUCCESS)
+                .remove(PREF_LAST_SUCCESS_LOCATION)
+                .remove(PREF_LAST_SUCCESS_ALL_LOCATIONS)
+                .remove(PREF_FAILURES)
+                .remove(PREF_BACKOFF_UNTIL)
+                .remove(PREF_IMMEDIATE_REQUESTED)
+                .commit();
+    }
+}
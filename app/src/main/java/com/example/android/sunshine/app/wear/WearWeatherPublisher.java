@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes today's forecast to the Sunshine watch face over the Wearable Data Layer, so the watch
+ * never has to fetch the weather itself.
+ *
+ * The DataItem only holds what the face draws: the formatted high and low, and the weather id
+ * for the icon.  It is only put when one of those changed since the last successful push, since
+ * every put wakes the watch to deliver it.
+ */
+public class WearWeatherPublisher {
+    private static final String LOG_TAG = WearWeatherPublisher.class.getSimpleName();
+
+    // These must match SunshineFaceUtil in the watchface module
+    public static final String PATH_TODAY = "/sunshine/today";
+    public static final String KEY_HIGH = "high";
+    public static final String KEY_LOW = "low";
+    public static final String KEY_WEATHER_ID = "weather_id";
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static final String[] WEAR_WEATHER_PROJECTION = new String[] {
+            WeatherContract.TodayEntry.COLUMN_WEATHER_ID,
+            WeatherContract.TodayEntry.COLUMN_HIGH,
+            WeatherContract.TodayEntry.COLUMN_LOW
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_HIGH = 1;
+    private static final int INDEX_LOW = 2;
+
+    private WearWeatherPublisher() {
+    }
+
+    /**
+     * Publishes today's forecast for the preferred location if it differs from what was last
+     * published.  This blocks while talking to Google Play services, so it must not be called
+     * from the UI thread.
+     *
+     * @param context Context used to read the forecast and connect to the Data Layer
+     */
+    public static void publishToday(Context context) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        Cursor cursor = SunshineSyncAdapter.queryToday(context, locationQuery,
+                WEAR_WEATHER_PROJECTION);
+        if (cursor == null) {
+            return;
+        }
+
+        int weatherId;
+        String high;
+        String low;
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            high = cursor.getString(INDEX_HIGH);
+            low = cursor.getString(INDEX_LOW);
+        } finally {
+            cursor.close();
+        }
+
+        // Skip the put, and the wakeup on the watch, when nothing the face draws has changed
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastPublishedKey = context.getString(R.string.pref_last_wear_forecast);
+        String forecast = high + "|" + low + "|" + weatherId;
+        if (forecast.equals(prefs.getString(lastPublishedKey, null))) {
+            Log.d(LOG_TAG, "Wear forecast unchanged, not publishing");
+            return;
+        }
+
+        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult connectionResult =
+                googleApiClient.blockingConnect(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!connectionResult.isSuccess()) {
+            Log.e(LOG_TAG, "Unable to connect to the Wearable API: " + connectionResult);
+            return;
+        }
+
+        try {
+            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(PATH_TODAY);
+            DataMap dataMap = putDataMapRequest.getDataMap();
+            dataMap.putString(KEY_HIGH, high);
+            dataMap.putString(KEY_LOW, low);
+            dataMap.putInt(KEY_WEATHER_ID, weatherId);
+
+            DataApi.DataItemResult result = Wearable.DataApi
+                    .putDataItem(googleApiClient, putDataMapRequest.asPutDataRequest())
+                    .await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (result.getStatus().isSuccess()) {
+                SharedPreferences.Editor editor = prefs.edit();
+                editor.putString(lastPublishedKey, forecast);
+                editor.commit();
+            } else {
+                Log.e(LOG_TAG, "Unable to publish the wear forecast: " + result.getStatus());
+            }
+        } finally {
+            googleApiClient.disconnect();
+        }
+    }
+}
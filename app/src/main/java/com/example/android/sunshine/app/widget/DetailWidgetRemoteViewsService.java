@@ -1,23 +1,28 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -25,7 +30,7 @@ import java.util.concurrent.ExecutionException;
  */
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
-    public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
+    public static final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
@@ -42,134 +47,208 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // The remote art, already scaled to the widget's icon size, keyed by getArtKey.  Shared by
+    // every detail widget, and bounded by the bytes of its bitmaps.
+    private static final LruCache<String, Bitmap> sArtCache = new LruCache<String, Bitmap>(
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 32, 4 * 1024 * 1024)) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    };
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
-        return new RemoteViewsFactory() {
-            private Cursor data = null;
+        return new DetailWidgetViewsFactory(this);
+    }
 
-            @Override
-            public void onCreate() {
-                // Nothing to do
-            }
+    static String getArtKey(String artUrl, int size) {
+        return artUrl + "@" + size;
+    }
 
-            @Override
-            public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
-                // This method is called by the app hosting the widget (e.g., the launcher)
-                // However, our ContentProvider is not exported so it doesn't have access to the
-                // data. Therefore we need to clear (and finally restore) the calling identity so
-                // that calls use our process and permission
-                final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-                Binder.restoreCallingIdentity(identityToken);
-            }
+    /**
+     * Drops every bitmap fetched so far.
+     */
+    static void clearArtCache() {
+        sArtCache.evictAll();
+    }
 
-            @Override
-            public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
-            }
+    /**
+     * Returns the art fetched from {@code artUrl} for icons {@code size} pixels across, or null
+     * if it isn't cached.
+     */
+    static Bitmap getCachedArt(String artUrl, int size) {
+        return sArtCache.get(getArtKey(artUrl, size));
+    }
 
-            @Override
-            public int getCount() {
-                return data == null ? 0 : data.getCount();
+    /**
+     * Builds the rows of one detail widget.
+     *
+     * The remote art for every row is fetched and scaled down in {@link #onDataSetChanged},
+     * where the widget host keeps showing the old rows until it returns.  {@link #getViewAt}
+     * then only looks it up, so scrolling never waits on the network, and a row whose art
+     * isn't there falls back to the app's own icon.
+     */
+    static class DetailWidgetViewsFactory implements RemoteViewsFactory {
+        private final Context mContext;
+        private final int mIconSize;
+        private Cursor data = null;
+
+        DetailWidgetViewsFactory(Context context) {
+            mContext = context;
+            mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        }
+
+        @Override
+        public void onCreate() {
+            // Nothing to do
+        }
+
+        @Override
+        public void onDataSetChanged() {
+            if (data != null) {
+                data.close();
             }
-
-            @Override
-            public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
-                    return null;
-                }
-                RemoteViews views = new RemoteViews(getPackageName(),
-                        R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
-                } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+            // This method is called by the app hosting the widget (e.g., the launcher)
+            // However, our ContentProvider is not exported so it doesn't have access to the
+            // data. Therefore we need to clear (and finally restore) the calling identity so
+            // that calls use our process and permission
+            final long identityToken = Binder.clearCallingIdentity();
+            String location = Utility.getPreferredLocation(mContext);
+            Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                    .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+            data = mContext.getContentResolver().query(weatherForLocationUri,
+                    FORECAST_COLUMNS,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            Binder.restoreCallingIdentity(identityToken);
+
+            if (data != null && !Utility.usingLocalGraphics(mContext)) {
+                prefetchArt();
+            }
+        }
+
+        /**
+         * Fetches the art every row needs that isn't cached yet.  Rows share art, so each URL is
+         * only fetched once, and all of them are requested before waiting on any, so Glide
+         * fetches them in parallel.
+         */
+        private void prefetchArt() {
+            Map<String, FutureTarget<Bitmap>> requests =
+                    new LinkedHashMap<String, FutureTarget<Bitmap>>();
+            for (int i = 0; data.moveToPosition(i); i++) {
+                String artUrl = Utility.getArtUrlForWeatherCondition(mContext,
+                        data.getInt(INDEX_WEATHER_CONDITION_ID));
+                if (artUrl == null || requests.containsKey(artUrl)
+                        || getCachedArt(artUrl, mIconSize) != null) {
+                    continue;
                 }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
+                requests.put(artUrl, Glide.with(mContext)
+                        .load(artUrl)
+                        .asBitmap()
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
+                        .fitCenter()
+                        .into(mIconSize, mIconSize));
+            }
+            data.moveToPosition(-1);
+
+            for (Map.Entry<String, FutureTarget<Bitmap>> request : requests.entrySet()) {
+                try {
+                    sArtCache.put(getArtKey(request.getKey(), mIconSize),
+                            request.getValue().get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(LOG_TAG, "Error retrieving large icon from " + request.getKey(), e);
                 }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-                final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
-                views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
-                return views;
             }
+        }
 
-            @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-            private void setRemoteContentDescription(RemoteViews views, String description) {
-                views.setContentDescription(R.id.widget_icon, description);
+        @Override
+        public void onDestroy() {
+            if (data != null) {
+                data.close();
+                data = null;
             }
-
-            @Override
-            public RemoteViews getLoadingView() {
-                return new RemoteViews(getPackageName(), R.layout.widget_detail_list_item);
+        }
+
+        @Override
+        public int getCount() {
+            return data == null ? 0 : data.getCount();
+        }
+
+        @Override
+        public RemoteViews getViewAt(int position) {
+            if (position == AdapterView.INVALID_POSITION ||
+                    data == null || !data.moveToPosition(position)) {
+                return null;
             }
-
-            @Override
-            public int getViewTypeCount() {
-                return 1;
+            RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                    R.layout.widget_detail_list_item);
+            int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+            int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+            Bitmap weatherArtImage = null;
+            if ( !Utility.usingLocalGraphics(mContext) ) {
+                String weatherArtResourceUrl =
+                        Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+                if (weatherArtResourceUrl != null) {
+                    weatherArtImage = getCachedArt(weatherArtResourceUrl, mIconSize);
+                }
             }
-
-            @Override
-            public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
-                return position;
+            String description = data.getString(INDEX_WEATHER_DESC);
+            long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+            String formattedDate = Utility.getFriendlyDayString(mContext, dateInMillis, false);
+            double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+            double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+            String formattedMaxTemperature = Utility.formatTemperature(mContext, maxTemp);
+            String formattedMinTemperature = Utility.formatTemperature(mContext, minTemp);
+            if (weatherArtImage != null) {
+                views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+            } else {
+                views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
             }
-
-            @Override
-            public boolean hasStableIds() {
-                return true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                setRemoteContentDescription(views, description);
             }
-        };
+            views.setTextViewText(R.id.widget_date, formattedDate);
+            views.setTextViewText(R.id.widget_description, description);
+            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+            final Intent fillInIntent = new Intent();
+            String locationSetting = Utility.getPreferredLocation(mContext);
+            Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                    locationSetting,
+                    dateInMillis);
+            fillInIntent.setData(weatherUri);
+            views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+            return views;
+        }
+
+        @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+        private void setRemoteContentDescription(RemoteViews views, String description) {
+            views.setContentDescription(R.id.widget_icon, description);
+        }
+
+        @Override
+        public RemoteViews getLoadingView() {
+            return new RemoteViews(mContext.getPackageName(), R.layout.widget_detail_list_item);
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return 1;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            if (data.moveToPosition(position))
+                return data.getLong(INDEX_WEATHER_ID);
+            return position;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
     }
 }
@@ -21,11 +21,13 @@ import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
+import android.content.res.Resources;
 import android.database.Cursor;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -33,22 +35,38 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
+ *
+ * Widgets of the same layout show the same RemoteViews, so one is built per layout and pushed
+ * to all of them at once.  A widget that was last pushed the same layout and snapshot isn't
+ * pushed again, unless the system asked for it through
+ * {@link AppWidgetManager#EXTRA_APPWIDGET_IDS}.
  */
 public class TodayWidgetIntentService extends IntentService {
     private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+            WeatherContract.TodayEntry.COLUMN_WEATHER_ID,
+            WeatherContract.TodayEntry.COLUMN_SHORT_DESC,
+            WeatherContract.TodayEntry.COLUMN_HIGH,
+            WeatherContract.TodayEntry.COLUMN_LOW
     };
     // these indices must match the projection
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
-    private static final int INDEX_MAX_TEMP = 2;
-    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_HIGH = 2;
+    private static final int INDEX_LOW = 3;
+
+    // What was last pushed to each widget, as a hash of its layout and the snapshot.  This is
+    // only kept in memory: if the process dies, the next update pushes every widget again,
+    // which is always safe, where a record that outlived the host's copy could leave a widget
+    // blank.  Only the service's worker thread touches it.
+    private static final SparseIntArray sPushedHashes = new SparseIntArray();
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
@@ -56,17 +74,26 @@ public class TodayWidgetIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        // Widgets the system asked to update may have lost what they showed, say after a
+        // reboot, so they're pushed whether or not anything changed
+        int[] requestedIds = intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS);
+        if (requestedIds != null) {
+            for (int appWidgetId : requestedIds) {
+                sPushedHashes.delete(appWidgetId);
+            }
+        }
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
 
-        // Get today's data from the ContentProvider
+        // Get today's snapshot from the ContentProvider
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor data = SunshineSyncAdapter.queryToday(this, location, FORECAST_COLUMNS);
         if (data == null) {
             return;
         }
@@ -77,20 +104,20 @@ public class TodayWidgetIntentService extends IntentService {
 
         // Extract the weather data from the Cursor
         int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
         String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
+        String formattedMaxTemperature = data.getString(INDEX_HIGH);
+        String formattedMinTemperature = data.getString(INDEX_LOW);
         data.close();
+        int snapshotHash = Arrays.hashCode(new Object[]{
+                weatherId, description, formattedMaxTemperature, formattedMinTemperature});
 
-        // Perform this loop procedure for each Today widget
+        // Sort the widgets that need pushing by layout, based on their widths
+        Resources resources = getResources();
+        int defaultWidth = resources.getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = resources.getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<List<Integer>> widgetsByLayout = new SparseArray<List<Integer>>();
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId, defaultWidth);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,6 +126,30 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
+            int hash = 31 * snapshotHash + layoutId;
+            int index = sPushedHashes.indexOfKey(appWidgetId);
+            if (index >= 0 && sPushedHashes.valueAt(index) == hash) {
+                continue;
+            }
+            List<Integer> widgets = widgetsByLayout.get(layoutId);
+            if (widgets == null) {
+                widgets = new ArrayList<Integer>();
+                widgetsByLayout.put(layoutId, widgets);
+            }
+            widgets.add(appWidgetId);
+        }
+        if (widgetsByLayout.size() == 0) {
+            return;
+        }
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+
+        // Build each layout once, for every widget that uses it
+        for (int i = 0; i < widgetsByLayout.size(); i++) {
+            int layoutId = widgetsByLayout.keyAt(i);
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
             // Add the data to the RemoteViews
@@ -110,29 +161,35 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on the widgets with this layout
+            List<Integer> widgets = widgetsByLayout.valueAt(i);
+            int[] ids = new int[widgets.size()];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = widgets.get(j);
+            }
+            appWidgetManager.updateAppWidget(ids, views);
+            for (int appWidgetId : ids) {
+                sPushedHashes.put(appWidgetId, 31 * snapshotHash + layoutId);
+            }
         }
     }
 
-    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId,
+                               int defaultWidth) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+            return defaultWidth;
         }
         // For Jelly Bean and higher devices, widgets can be resized - the current size can be
         // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId, defaultWidth);
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId,
+                                          int defaultWidth) {
         Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
         if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
             int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
@@ -141,7 +198,7 @@ public class TodayWidgetIntentService extends IntentService {
             return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
                     displayMetrics);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        return defaultWidth;
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
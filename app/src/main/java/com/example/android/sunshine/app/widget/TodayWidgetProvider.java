@@ -34,7 +34,9 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // These widgets are pushed even if they were pushed the same forecast before
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, appWidgetIds));
     }
 
     @Override
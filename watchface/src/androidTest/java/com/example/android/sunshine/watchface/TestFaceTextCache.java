@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.util.TimeZone;
+
+/*
+    Checks the text SunshineFace draws, and that preparing it for a frame where nothing visible
+    changed doesn't allocate.
+ */
+public class TestFaceTextCache extends AndroidTestCase {
+
+    static final int STEADY_STATE_FRAMES = 1000;
+
+    public void testText() {
+        FaceTextCache cache = new FaceTextCache();
+        cache.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Time time = new Time("UTC");
+        time.set(5, 7, 9, 24, 7, 2015);  // 09:07:05, August 24th, 2015
+        time.normalize(true);
+
+        assertTrue("Error: The first update should build the text", cache.update(time));
+        assertEquals("09:", new String(cache.mHourChars));
+        assertEquals("07", new String(cache.mMinuteChars));
+        assertEquals("MON, AUG 24 2015", cache.getDateText());
+
+        time.set(6, 7, 9, 24, 7, 2015);
+        time.normalize(true);
+        assertFalse("Error: A new second shouldn't change the text", cache.update(time));
+
+        time.set(0, 0, 0, 25, 7, 2015);
+        time.normalize(true);
+        assertTrue("Error: The day rolled over", cache.update(time));
+        assertEquals("00:", new String(cache.mHourChars));
+        assertEquals("00", new String(cache.mMinuteChars));
+        assertEquals("TUE, AUG 25 2015", cache.getDateText());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testSteadyStateFramesDoNotAllocate() {
+        FaceTextCache cache = new FaceTextCache();
+        Time time = new Time();
+        time.setToNow();
+        time.second = 0;
+        cache.update(time);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < STEADY_STATE_FRAMES; i++) {
+            time.second = i % 60;
+            cache.update(time);
+            // What onDraw reads
+            cache.getDateText();
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: Steady-state frames allocated objects",
+                0, Debug.getThreadAllocCount());
+    }
+}
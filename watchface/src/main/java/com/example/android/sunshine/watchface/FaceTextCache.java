@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Holds the text {@link SunshineFace} draws for the time and date, and only rebuilds it when the
+ * value it shows actually changes.  In interactive mode the face is drawn every second, so the
+ * hour and minute are kept in char buffers that are rewritten in place and the date string is
+ * only formatted again when the day rolls over or the time zone changes.  A steady-state frame
+ * doesn't allocate anything.
+ */
+class FaceTextCache {
+    private static final String DATE_FORMAT = "EEE, MMM dd yyyy";
+
+    // "hh:" and "mm", ready for Canvas.drawText(char[], int, int, float, float, Paint)
+    final char[] mHourChars = new char[3];
+    final char[] mMinuteChars = new char[2];
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat(DATE_FORMAT);
+    private final Date mDate = new Date();
+    private String mDateText;
+
+    private int mHour = -1;
+    private int mMinute = -1;
+    private int mYearDay = -1;
+    private int mYear = -1;
+
+    FaceTextCache() {
+        mHourChars[2] = ':';
+    }
+
+    /**
+     * Brings the cached text up to date with {@code time}.
+     *
+     * @return true if any of the text changed
+     */
+    boolean update(Time time) {
+        boolean changed = false;
+        if (time.hour != mHour) {
+            mHour = time.hour;
+            writeTwoDigits(mHourChars, mHour);
+            changed = true;
+        }
+        if (time.minute != mMinute) {
+            mMinute = time.minute;
+            writeTwoDigits(mMinuteChars, mMinute);
+            changed = true;
+        }
+        if (time.yearDay != mYearDay || time.year != mYear) {
+            mYearDay = time.yearDay;
+            mYear = time.year;
+            mDate.setTime(time.toMillis(false));
+            mDateText = mDateFormat.format(mDate).toUpperCase();
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Switches the date format to a new time zone and forces everything to be rebuilt on the
+     * next {@link #update}.
+     */
+    void setTimeZone(TimeZone timeZone) {
+        mDateFormat.setTimeZone(timeZone);
+        invalidate();
+    }
+
+    /**
+     * Forces everything to be rebuilt on the next {@link #update}.
+     */
+    void invalidate() {
+        mHour = -1;
+        mMinute = -1;
+        mYearDay = -1;
+        mYear = -1;
+    }
+
+    String getDateText() {
+        return mDateText;
+    }
+
+    private static void writeTwoDigits(char[] chars, int value) {
+        chars[0] = (char) ('0' + value / 10);
+        chars[1] = (char) ('0' + value % 10);
+    }
+}
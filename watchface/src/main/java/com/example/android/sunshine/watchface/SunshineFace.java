@@ -20,7 +20,9 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
@@ -31,6 +33,7 @@ import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.preference.PreferenceManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.Time;
@@ -39,8 +42,6 @@ import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -72,14 +73,17 @@ public class SunshineFace extends CanvasWatchFaceService {
         return new Engine();
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine {
+    private class Engine extends CanvasWatchFaceService.Engine
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
+                String timeZoneId = intent.getStringExtra("time-zone");
+                mTime.clear(timeZoneId);
                 mTime.setToNow();
+                mTextCache.setTimeZone(TimeZone.getTimeZone(timeZoneId));
             }
         };
 
@@ -99,6 +103,13 @@ public class SunshineFace extends CanvasWatchFaceService {
 
         Time mTime;
 
+        // Everything onDraw needs is prepared ahead of time, so drawing a frame doesn't allocate.
+        final FaceTextCache mTextCache = new FaceTextCache();
+        Bitmap mWeatherIcon;
+        int mWeatherIconResourceId = -1;
+        String mMaxTempText = "";
+        String mMinTempText = "";
+
         float mXOffset;
         float mYOffset;
         int mXIconInt, mYIconInt,mXHourInt,mXDateInt,mYDateInt, mXMaxInt, mXMinInt, mYTempInt;
@@ -174,11 +185,53 @@ public class SunshineFace extends CanvasWatchFaceService {
             mTriadPath.offset(-75, -50);
 
             mTime = new Time();
+
+            // The forecast is pushed from the handheld by SunshineFaceListenerService
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(SunshineFace.this);
+            prefs.registerOnSharedPreferenceChangeListener(this);
+            updateWeather(prefs);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+            if (SunshineFaceUtil.PREF_HIGH.equals(key) || SunshineFaceUtil.PREF_LOW.equals(key)
+                    || SunshineFaceUtil.PREF_WEATHER_ID.equals(key)) {
+                updateWeather(prefs);
+                invalidate();
+            }
+        }
+
+        /**
+         * Reads the last forecast received from the handheld.  The icon is only decoded again
+         * when the weather id maps to different art.
+         */
+        private void updateWeather(SharedPreferences prefs) {
+            mMaxTempText = prefs.getString(SunshineFaceUtil.PREF_HIGH, "");
+            mMinTempText = prefs.getString(SunshineFaceUtil.PREF_LOW, "");
+
+            int resourceId = SunshineFaceUtil.getArtResourceForWeatherCondition(
+                    prefs.getInt(SunshineFaceUtil.PREF_WEATHER_ID, -1));
+            if (resourceId != mWeatherIconResourceId) {
+                if (mWeatherIcon != null) {
+                    mWeatherIcon.recycle();
+                    mWeatherIcon = null;
+                }
+                if (resourceId != -1) {
+                    mWeatherIcon = BitmapFactory.decodeResource(getResources(), resourceId);
+                }
+                mWeatherIconResourceId = resourceId;
+            }
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            PreferenceManager.getDefaultSharedPreferences(SunshineFace.this)
+                    .unregisterOnSharedPreferenceChangeListener(this);
+            if (mWeatherIcon != null) {
+                mWeatherIcon.recycle();
+                mWeatherIcon = null;
+            }
             super.onDestroy();
         }
 
@@ -199,8 +252,10 @@ public class SunshineFace extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
+                TimeZone timeZone = TimeZone.getDefault();
+                mTime.clear(timeZone.getID());
                 mTime.setToNow();
+                mTextCache.setTimeZone(timeZone);
             } else {
                 unregisterReceiver();
             }
@@ -332,23 +387,21 @@ public class SunshineFace extends CanvasWatchFaceService {
             // Draw the background.
             canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
 
-            if (!isInAmbientMode()) {
-                canvas.drawBitmap(BitmapFactory.decodeResource(getResources(), R.drawable.art_light_rain),
-                        mXIconInt, mYIconInt, mIcon);
+            if (!isInAmbientMode() && mWeatherIcon != null) {
+                canvas.drawBitmap(mWeatherIcon, mXIconInt, mYIconInt, mIcon);
             }
             canvas.drawPath(mTriadPath, mTriadBg);
 
             mTime.setToNow();
-
-            String hour = String.format("%02d:", mTime.hour);
-            String minute = String.format("%02d", mTime.minute);
-            String date = new SimpleDateFormat("EEE, MMM dd yyyy").format(new Date()).toUpperCase();
-
-            canvas.drawText(hour, mXOffset-mXHourInt, mYOffset, mHourTextPaint);
-            canvas.drawText(minute, mXOffset, mYOffset, mMinuteTextPaint);
-            canvas.drawText(date, mXOffset-mXDateInt, mYOffset+mYDateInt, mDateTextPaint);
-            canvas.drawText("25\u00B0", mXOffset-mXMaxInt, mYOffset+mYTempInt, mMaxTempTextPaint);
-            canvas.drawText("16\u00B0", mXOffset-mXMinInt, mYOffset+mYTempInt, mMinTempTextPaint);
+            mTextCache.update(mTime);
+
+            canvas.drawText(mTextCache.mHourChars, 0, mTextCache.mHourChars.length,
+                    mXOffset-mXHourInt, mYOffset, mHourTextPaint);
+            canvas.drawText(mTextCache.mMinuteChars, 0, mTextCache.mMinuteChars.length,
+                    mXOffset, mYOffset, mMinuteTextPaint);
+            canvas.drawText(mTextCache.getDateText(), mXOffset-mXDateInt, mYOffset+mYDateInt, mDateTextPaint);
+            canvas.drawText(mMaxTempText, mXOffset-mXMaxInt, mYOffset+mYTempInt, mMaxTempTextPaint);
+            canvas.drawText(mMinTempText, mXOffset-mXMinInt, mYOffset+mYTempInt, mMinTempTextPaint);
         }
         /**
          * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.watchface;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Receives today's forecast from the handheld and stores it for {@link SunshineFace}, which
+ * listens for the preference change and redraws.  The watch never asks for the weather; Google
+ * Play services starts this service when the handheld puts a new DataItem.
+ */
+public class SunshineFaceListenerService extends WearableListenerService {
+    private static final String TAG = "SunshineFaceListener";
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        for (DataEvent dataEvent : dataEvents) {
+            if (dataEvent.getType() != DataEvent.TYPE_CHANGED) {
+                continue;
+            }
+            DataItem dataItem = dataEvent.getDataItem();
+            if (!SunshineFaceUtil.PATH_TODAY.equals(dataItem.getUri().getPath())) {
+                continue;
+            }
+            DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Forecast received: " + dataMap);
+            }
+
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+            prefs.edit()
+                    .putString(SunshineFaceUtil.PREF_HIGH,
+                            dataMap.getString(SunshineFaceUtil.KEY_HIGH))
+                    .putString(SunshineFaceUtil.PREF_LOW,
+                            dataMap.getString(SunshineFaceUtil.KEY_LOW))
+                    .putInt(SunshineFaceUtil.PREF_WEATHER_ID,
+                            dataMap.getInt(SunshineFaceUtil.KEY_WEATHER_ID))
+                    .apply();
+        }
+    }
+}
@@ -23,6 +23,23 @@ public class SunshineFaceUtil {
      */
     public static final String PATH_WITH_FEATURE = "/watch_face_config/Digital";
 
+    /**
+     * The path and keys of the {@link DataItem} the handheld puts today's forecast in.  These must
+     * match WearWeatherPublisher in the app module.
+     */
+    public static final String PATH_TODAY = "/sunshine/today";
+    public static final String KEY_HIGH = "high";
+    public static final String KEY_LOW = "low";
+    public static final String KEY_WEATHER_ID = "weather_id";
+
+    /**
+     * Keys of the shared preferences {@link SunshineFaceListenerService} keeps the last received
+     * forecast in, so the face has something to draw as soon as it starts.
+     */
+    public static final String PREF_HIGH = "today_high";
+    public static final String PREF_LOW = "today_low";
+    public static final String PREF_WEATHER_ID = "today_weather_id";
+
     /**
      * Name of the default interactive mode background color and the ambient mode background color.
      */
@@ -162,5 +179,40 @@ public class SunshineFaceUtil {
 //        }
 //    }
 
+    /**
+     * Helper method to provide the art resource id according to the weather condition id returned
+     * by the OpenWeatherMap call.
+     * @param weatherId from OpenWeatherMap API response
+     * @return resource id for the corresponding icon. -1 if no relation is found.
+     */
+    public static int getArtResourceForWeatherCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
     private SunshineFaceUtil() { }
 }